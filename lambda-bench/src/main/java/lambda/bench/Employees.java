@@ -0,0 +1,80 @@
+package lambda.bench;
+
+import data.Employee;
+import data.JobHistoryEntry;
+import data.Person;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class Employees {
+    private static final String[] FIRST_NAMES = {"John", "Bob", "Alice", "Mary", "Peter", "Kate"};
+    private static final String[] LAST_NAMES = {"Galt", "Doe", "White", "Smith", "Brown"};
+    private static final String[] POSITIONS = {"dev", "QA", "qa", "manager"};
+    private static final String[] EMPLOYERS = {"epam", "google", "yandex", "abc"};
+
+    // same seed for every fork, so all benchmarks see the same data
+    public static List<Employee> generate(int size) {
+        final Random random = new Random(42);
+        final List<Employee> employees = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            employees.add(new Employee(
+                    new Person(
+                            FIRST_NAMES[random.nextInt(FIRST_NAMES.length)],
+                            LAST_NAMES[random.nextInt(LAST_NAMES.length)],
+                            20 + random.nextInt(45)),
+                    Arrays.asList(
+                            job(random),
+                            job(random),
+                            job(random)
+                    )));
+        }
+
+        return employees;
+    }
+
+    private static JobHistoryEntry job(Random random) {
+        return new JobHistoryEntry(
+                random.nextInt(5),
+                POSITIONS[random.nextInt(POSITIONS.length)],
+                EMPLOYERS[random.nextInt(EMPLOYERS.length)]);
+    }
+
+    // Filtering.filtering: Johns with dev experience worked in epam more then 1 year
+    public static boolean isJohn(Employee e) {
+        return e.getPerson().getFirstName().equals("John");
+    }
+
+    public static boolean hasDevExperience(Employee e) {
+        return e.anyJob(j -> j.getPosition().equals("dev"));
+    }
+
+    public static boolean workedInEpamMoreThenOneYear(Employee e) {
+        return e.anyJob(j -> j.getEmployer().equals("epam") && j.getDuration() > 1);
+    }
+
+    // Mapping.mapping: change name to John, add 1 year to experience duration, replace qa with QA
+    public static Employee renameToJohn(Employee e) {
+        return e.withPerson(e.getPerson().withFirstName("John"));
+    }
+
+    public static Employee addOneYear(Employee e) {
+        final List<JobHistoryEntry> history = new ArrayList<>();
+        for (JobHistoryEntry j : e.getJobHistory()) {
+            history.add(j.withDuration(j.getDuration() + 1));
+        }
+
+        return e.withJobHistory(history);
+    }
+
+    public static Employee qaToUpperCase(Employee e) {
+        final List<JobHistoryEntry> history = new ArrayList<>();
+        for (JobHistoryEntry j : e.getJobHistory()) {
+            history.add(j.getPosition().equals("qa") ? j.withPosition("QA") : j);
+        }
+
+        return e.withJobHistory(history);
+    }
+}
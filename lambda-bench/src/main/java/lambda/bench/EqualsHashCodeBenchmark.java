@@ -0,0 +1,143 @@
+package lambda.bench;
+
+import data.Employee;
+import data.JobHistoryEntry;
+import data.Person;
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// data classes equals/hashCode against the EqualsBuilder/HashCodeBuilder versions they replaced
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EqualsHashCodeBenchmark {
+
+    private List<Employee> employees;
+    private List<Employee> copies;
+
+    @Setup
+    public void setUp() {
+        employees = Employees.generate(1000);
+        copies = Employees.generate(1000);
+    }
+
+    @Benchmark
+    public int hashCodeCurrent() {
+        int h = 0;
+        for (Employee e : employees) {
+            h += e.hashCode();
+        }
+        return h;
+    }
+
+    @Benchmark
+    public int hashCodeBuilder() {
+        int h = 0;
+        for (Employee e : employees) {
+            h += builderHashCode(e);
+        }
+        return h;
+    }
+
+    @Benchmark
+    public int equalsCurrent() {
+        int equal = 0;
+        for (int i = 0; i < employees.size(); i++) {
+            if (employees.get(i).equals(copies.get(i))) {
+                equal++;
+            }
+        }
+        return equal;
+    }
+
+    @Benchmark
+    public int equalsBuilder() {
+        int equal = 0;
+        for (int i = 0; i < employees.size(); i++) {
+            if (builderEquals(employees.get(i), copies.get(i))) {
+                equal++;
+            }
+        }
+        return equal;
+    }
+
+    @Benchmark
+    public Set<Employee> deduplicate() {
+        final Set<Employee> set = new HashSet<>(employees);
+        set.addAll(copies);
+        return set;
+    }
+
+    private static int builderHashCode(Person p) {
+        return new HashCodeBuilder(17, 37)
+                .append(p.getFirstName())
+                .append(p.getLastName())
+                .append(p.getAge())
+                .toHashCode();
+    }
+
+    private static int builderHashCode(JobHistoryEntry j) {
+        return new HashCodeBuilder(17, 37)
+                .append(j.getDuration())
+                .append(j.getPosition())
+                .append(j.getEmployer())
+                .toHashCode();
+    }
+
+    private static int builderHashCode(Employee e) {
+        final HashCodeBuilder builder = new HashCodeBuilder(17, 37)
+                .append(builderHashCode(e.getPerson()));
+        for (JobHistoryEntry j : e.getJobHistory()) {
+            builder.append(builderHashCode(j));
+        }
+        return builder.toHashCode();
+    }
+
+    private static boolean builderEquals(Person p1, Person p2) {
+        return new EqualsBuilder()
+                .append(p1.getAge(), p2.getAge())
+                .append(p1.getFirstName(), p2.getFirstName())
+                .append(p1.getLastName(), p2.getLastName())
+                .isEquals();
+    }
+
+    private static boolean builderEquals(JobHistoryEntry j1, JobHistoryEntry j2) {
+        return new EqualsBuilder()
+                .append(j1.getDuration(), j2.getDuration())
+                .append(j1.getPosition(), j2.getPosition())
+                .append(j1.getEmployer(), j2.getEmployer())
+                .isEquals();
+    }
+
+    private static boolean builderEquals(Employee e1, Employee e2) {
+        final List<JobHistoryEntry> h1 = e1.getJobHistory();
+        final List<JobHistoryEntry> h2 = e2.getJobHistory();
+        if (!builderEquals(e1.getPerson(), e2.getPerson()) || h1.size() != h2.size()) {
+            return false;
+        }
+        for (int i = 0; i < h1.size(); i++) {
+            if (!builderEquals(h1.get(i), h2.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
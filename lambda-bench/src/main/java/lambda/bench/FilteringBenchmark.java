@@ -0,0 +1,97 @@
+package lambda.bench;
+
+import com.google.common.collect.FluentIterable;
+import data.Employee;
+import data.EmployeeBitmapIndex;
+import lambda.part3.example.Filtering.FilterUtil;
+import lambda.part3.example.Filtering.LazyFilterUtil;
+import lambda.part3.exercise.FilterMap.LazyCollectionHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@State(Scope.Benchmark)
+public class FilteringBenchmark {
+
+    @Param({"1000", "100000", "10000000"})
+    private int size;
+
+    private List<Employee> employees;
+    private EmployeeBitmapIndex index;
+
+    @Setup
+    public void setUp() {
+        employees = Employees.generate(size);
+        index = EmployeeBitmapIndex.of(employees);
+    }
+
+    @Benchmark
+    public List<Employee> filterUtil() {
+        return new FilterUtil<>(employees)
+                .filter(Employees::isJohn)
+                .filter(Employees::hasDevExperience)
+                .filter(Employees::workedInEpamMoreThenOneYear)
+                .getList();
+    }
+
+    @Benchmark
+    public List<Employee> lazyFilterUtil() {
+        return new LazyFilterUtil<>(employees)
+                .filter(Employees::isJohn)
+                .filter(Employees::hasDevExperience)
+                .filter(Employees::workedInEpamMoreThenOneYear)
+                .force();
+    }
+
+    @Benchmark
+    public List<Employee> lazyCollectionHelper() {
+        return new LazyCollectionHelper<>(employees)
+                .filter(Employees::isJohn)
+                .filter(Employees::hasDevExperience)
+                .filter(Employees::workedInEpamMoreThenOneYear)
+                .force();
+    }
+
+    @Benchmark
+    public List<Employee> stream() {
+        return employees.stream()
+                .filter(Employees::isJohn)
+                .filter(Employees::hasDevExperience)
+                .filter(Employees::workedInEpamMoreThenOneYear)
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<Employee> fluentIterable() {
+        return FluentIterable.from(employees)
+                .filter(Employees::isJohn)
+                .filter(Employees::hasDevExperience)
+                .filter(Employees::workedInEpamMoreThenOneYear)
+                .toList();
+    }
+
+    @Benchmark
+    public List<Employee> bitmapIndex() {
+        return index.get(EmployeeBitmapIndex.and(
+                index.firstName("John"),
+                index.position("dev"),
+                index.anyJob(EmployeeBitmapIndex.and(index.jobsWithEmployer("epam"), index.jobsWithDuration(2, Integer.MAX_VALUE)))));
+    }
+}
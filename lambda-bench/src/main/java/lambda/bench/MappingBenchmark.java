@@ -0,0 +1,76 @@
+package lambda.bench;
+
+import com.google.common.collect.FluentIterable;
+import data.Employee;
+import lambda.part3.exercise.FilterMap.LazyCollectionHelper;
+import lambda.part3.exercise.Mapping.MapHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@State(Scope.Benchmark)
+public class MappingBenchmark {
+
+    @Param({"1000", "100000", "10000000"})
+    private int size;
+
+    private List<Employee> employees;
+
+    @Setup
+    public void setUp() {
+        employees = Employees.generate(size);
+    }
+
+    @Benchmark
+    public List<Employee> mapHelper() {
+        return new MapHelper<>(employees)
+                .map(Employees::renameToJohn)
+                .map(Employees::addOneYear)
+                .map(Employees::qaToUpperCase)
+                .getList();
+    }
+
+    @Benchmark
+    public List<Employee> lazyCollectionHelper() {
+        return new LazyCollectionHelper<>(employees)
+                .map(Employees::renameToJohn)
+                .map(Employees::addOneYear)
+                .map(Employees::qaToUpperCase)
+                .force();
+    }
+
+    @Benchmark
+    public List<Employee> stream() {
+        return employees.stream()
+                .map(Employees::renameToJohn)
+                .map(Employees::addOneYear)
+                .map(Employees::qaToUpperCase)
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<Employee> fluentIterable() {
+        return FluentIterable.from(employees)
+                .transform(Employees::renameToJohn)
+                .transform(Employees::addOneYear)
+                .transform(Employees::qaToUpperCase)
+                .toList();
+    }
+}
@@ -0,0 +1,81 @@
+package lambda.bench;
+
+import data.Employee;
+import data.Person;
+import data.PropertyAccessors;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+// dynamic property access: hand-written method reference, generated accessor and reflection;
+// the accessors are static final, so the JIT treats them as constants, and each has its own loop,
+// so no call site sees more than one accessor class
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PropertyAccessBenchmark {
+
+    private static final Function<Person, String> METHOD_REFERENCE = Person::getLastName;
+    private static final Function<Person, String> GENERATED = PropertyAccessors.stringProperty(Person.class, "lastName");
+
+    private List<Person> persons;
+    private Method reflective;
+
+    @Setup
+    public void setUp() throws NoSuchMethodException {
+        persons = new ArrayList<>();
+        for (Employee e : Employees.generate(1000)) {
+            persons.add(e.getPerson());
+        }
+        reflective = Person.class.getMethod("getLastName");
+    }
+
+    @Benchmark
+    public int methodReference() {
+        int count = 0;
+        for (Person p : persons) {
+            if (METHOD_REFERENCE.apply(p).equals("Galt")) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int generated() {
+        int count = 0;
+        for (Person p : persons) {
+            if (GENERATED.apply(p).equals("Galt")) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int reflection() throws ReflectiveOperationException {
+        int count = 0;
+        for (Person p : persons) {
+            if (reflective.invoke(p).equals("Galt")) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,81 @@
+package lambda.bench;
+
+import data.Employee;
+import data.Person;
+import data.PersonSorter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// sort by (lastName, firstName, age): comparator chain vs PersonSorter
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SortingBenchmark {
+    private static final Comparator<Person> COMPARATOR = Comparator.comparing(Person::getLastName)
+            .thenComparing(Person::getFirstName)
+            .thenComparingInt(Person::getAge);
+    private static final PersonSorter SORTER =
+            PersonSorter.by(PersonSorter.Key.LAST_NAME, PersonSorter.Key.FIRST_NAME, PersonSorter.Key.AGE);
+
+    @Param({"1000", "100000", "10000000"})
+    private int size;
+
+    private Person[] source;
+    private Person[] persons;
+
+    @Setup
+    public void setUp() {
+        final List<Employee> employees = Employees.generate(size);
+        source = new Person[size];
+        for (int i = 0; i < size; i++) {
+            source[i] = employees.get(i).getPerson();
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void copy() {
+        persons = source.clone();
+    }
+
+    @Benchmark
+    public Person[] comparator() {
+        Arrays.sort(persons, COMPARATOR);
+        return persons;
+    }
+
+    @Benchmark
+    public Person[] parallelComparator() {
+        Arrays.parallelSort(persons, COMPARATOR);
+        return persons;
+    }
+
+    @Benchmark
+    public Person[] sorter() {
+        SORTER.sort(persons);
+        return persons;
+    }
+
+    @Benchmark
+    public Person[] parallelSorter() {
+        SORTER.parallel().sort(persons);
+        return persons;
+    }
+}
@@ -1,37 +1,86 @@
 package data;
 
-import org.apache.commons.lang3.builder.EqualsBuilder;
-import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.IntUnaryOperator;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 
 public class Employee {
     private final Person person;
-    private final List<JobHistoryEntry> jobHistory;
+    // appends and single-entry updates share structure with the source history
+    private final PersistentList<JobHistoryEntry> jobHistory;
+    // lazily computed, 0 means not computed yet (as in String)
+    private int hash;
 
+    // a null history is an empty one
     public Employee(Person person, List<JobHistoryEntry> jobHistory) {
         this.person = person;
-        this.jobHistory = jobHistory;
+        this.jobHistory = jobHistory == null ? PersistentList.<JobHistoryEntry>empty() : PersistentList.copyOf(jobHistory);
+    }
+
+    // copyOf keeps a PersistentList, so the history is shared, not copied
+    private static Employee sharing(Person person, PersistentList<JobHistoryEntry> jobHistory) {
+        return new Employee(person, jobHistory);
     }
 
     public Employee withPerson(Person p) {
-        return new Employee(p, jobHistory);
+        return sharing(p, jobHistory);
     }
 
     public Employee withJobHistory(List<JobHistoryEntry> h) {
         return new Employee(person, h);
     }
 
+    // O(log n), the rest of the history is shared
+    public Employee withJobAdded(JobHistoryEntry job) {
+        return sharing(person, jobHistory.plus(job));
+    }
+
+    // O(log n), the rest of the history is shared
+    public Employee withJob(int index, JobHistoryEntry job) {
+        return sharing(person, jobHistory.with(index, job));
+    }
+
+    public Builder toBuilder() {
+        return new Builder().from(this);
+    }
+
     public Person getPerson() {
         return person;
     }
 
+    // read-only view, no copy
     public List<JobHistoryEntry> getJobHistory() {
+        return jobHistory;
+    }
+
+    public List<JobHistoryEntry> copyJobHistory() {
         return new ArrayList<>(jobHistory);
     }
 
+    public boolean anyJob(Predicate<JobHistoryEntry> condition) {
+        for (JobHistoryEntry j : jobHistory) {
+            if (condition.test(j)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    public void forEachJob(Consumer<JobHistoryEntry> action) {
+        for (JobHistoryEntry j : jobHistory) {
+            action.accept(j);
+        }
+    }
+
     @Override
     public String toString() {
         return new ToStringBuilder(this)
@@ -48,17 +97,164 @@ public class Employee {
 
         Employee employee = (Employee) o;
 
-        return new EqualsBuilder()
-                .append(person, employee.person)
-                .append(jobHistory, employee.jobHistory)
-                .isEquals();
+        if (hash != 0 && employee.hash != 0 && hash != employee.hash) return false;
+
+        if (!Objects.equals(person, employee.person)) return false;
+
+        if (jobHistory == employee.jobHistory) return true;
+
+        if (jobHistory.size() != employee.jobHistory.size()) return false;
+
+        // leaf by leaf, get(i) would walk the trie for every entry
+        final Iterator<JobHistoryEntry> other = employee.jobHistory.iterator();
+        for (JobHistoryEntry j : jobHistory) {
+            if (!Objects.equals(j, other.next())) return false;
+        }
+
+        return true;
     }
 
     @Override
     public int hashCode() {
-        return new HashCodeBuilder(17, 37)
-                .append(person)
-                .append(jobHistory)
-                .toHashCode();
+        int h = hash;
+        if (h == 0) {
+            h = Objects.hashCode(person);
+            for (JobHistoryEntry j : jobHistory) {
+                h = 31 * h + Objects.hashCode(j);
+            }
+            hash = h;
+        }
+
+        return h;
+    }
+
+    // Mutable scratch copy: several rewrites are applied in place and build() allocates once.
+    // Unchanged persons, entries and histories of the source employee are reused.
+    // Can be reused for the next employee with from(), not thread-safe.
+    public static class Builder {
+        private Employee source;
+        private String firstName;
+        private String lastName;
+        private int age;
+        private int jobs;
+        private int[] durations = new int[8];
+        private String[] positions = new String[8];
+        private String[] employers = new String[8];
+
+        public Builder from(Employee e) {
+            source = e;
+            firstName = e.person.getFirstName();
+            lastName = e.person.getLastName();
+            age = e.person.getAge();
+            jobs = 0;
+            e.forEachJob(j -> addJob(j.getDuration(), j.getPosition(), j.getEmployer()));
+            return this;
+        }
+
+        public Builder firstName(String firstName) {
+            this.firstName = firstName;
+            return this;
+        }
+
+        public Builder lastName(String lastName) {
+            this.lastName = lastName;
+            return this;
+        }
+
+        public Builder age(int age) {
+            this.age = age;
+            return this;
+        }
+
+        public Builder updateDurations(IntUnaryOperator operator) {
+            for (int i = 0; i < jobs; i++) {
+                durations[i] = operator.applyAsInt(durations[i]);
+            }
+            return this;
+        }
+
+        public Builder updatePositions(UnaryOperator<String> operator) {
+            for (int i = 0; i < jobs; i++) {
+                positions[i] = operator.apply(positions[i]);
+            }
+            return this;
+        }
+
+        public Builder updateEmployers(UnaryOperator<String> operator) {
+            for (int i = 0; i < jobs; i++) {
+                employers[i] = operator.apply(employers[i]);
+            }
+            return this;
+        }
+
+        public Builder addJob(int duration, String position, String employer) {
+            if (jobs == durations.length) {
+                durations = Arrays.copyOf(durations, jobs * 2);
+                positions = Arrays.copyOf(positions, jobs * 2);
+                employers = Arrays.copyOf(employers, jobs * 2);
+            }
+            durations[jobs] = duration;
+            positions[jobs] = position;
+            employers[jobs] = employer;
+            jobs++;
+            return this;
+        }
+
+        public Builder clearJobs() {
+            jobs = 0;
+            return this;
+        }
+
+        public Employee build() {
+            final Person person = source != null && samePerson(source.person)
+                    ? source.person
+                    : new Person(firstName, lastName, age);
+
+            final PersistentList<JobHistoryEntry> sourceJobs = source == null ? PersistentList.empty() : source.jobHistory;
+            final JobHistoryEntry[] entries = new JobHistoryEntry[jobs];
+            // source entries that were rewritten
+            int updated = 0;
+            for (int i = 0; i < jobs; i++) {
+                final JobHistoryEntry old = i < sourceJobs.size() ? sourceJobs.get(i) : null;
+                if (old != null && sameJob(old, i)) {
+                    entries[i] = old;
+                } else {
+                    entries[i] = new JobHistoryEntry(durations[i], positions[i], employers[i]);
+                    if (old != null) {
+                        updated++;
+                    }
+                }
+            }
+
+            final PersistentList<JobHistoryEntry> history;
+            if (jobs < sourceJobs.size() || updated > 1) {
+                history = PersistentList.copyOf(Arrays.asList(entries));
+            } else {
+                // appends and at most one update: patch the source history
+                PersistentList<JobHistoryEntry> patched = sourceJobs;
+                for (int i = 0; i < jobs; i++) {
+                    if (i >= sourceJobs.size()) {
+                        patched = patched.plus(entries[i]);
+                    } else if (entries[i] != sourceJobs.get(i)) {
+                        patched = patched.with(i, entries[i]);
+                    }
+                }
+                history = patched;
+            }
+
+            if (source != null && person == source.person && history == sourceJobs) {
+                return source;
+            }
+            return sharing(person, history);
+        }
+
+        private boolean samePerson(Person p) {
+            return age == p.getAge() && Objects.equals(firstName, p.getFirstName()) && Objects.equals(lastName, p.getLastName());
+        }
+
+        private boolean sameJob(JobHistoryEntry j, int i) {
+            return durations[i] == j.getDuration() && Objects.equals(positions[i], j.getPosition())
+                    && Objects.equals(employers[i], j.getEmployer());
+        }
     }
 }
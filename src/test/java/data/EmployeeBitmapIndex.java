@@ -0,0 +1,352 @@
+package data;
+
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Immutable Roaring bitmap indexes over a snapshot of employees.
+// Employee ordinals are positions in the snapshot, job ordinals number all job entries in order.
+// Job attributes are indexed per job, so a conjunction over one entry (employer == "epam" && duration > 1)
+// is an AND of job bitmaps mapped to employees by anyJob, and not an AND of two employee sets.
+//   index.get(and(index.firstName("John"), index.position("dev"),
+//           index.anyJob(and(index.jobsWithEmployer("epam"), index.jobsWithDuration(2, Integer.MAX_VALUE)))))
+public class EmployeeBitmapIndex {
+    // durations 0 until DURATION_BUCKETS have a bucket each, the rest are in the overflow bucket
+    private static final int DURATION_BUCKETS = 64;
+    // never returned, see shared and copy
+    private static final RoaringBitmap EMPTY = new RoaringBitmap();
+
+    private final List<Employee> employees;
+    private final int[] jobOwner;
+    private final int[] duration;
+    private final RoaringBitmap all;
+    private final Map<String, RoaringBitmap> firstNames;
+    private final Map<String, RoaringBitmap> lastNames;
+    private final Map<String, RoaringBitmap> positions;
+    private final Map<String, RoaringBitmap> employers;
+    private final Map<String, RoaringBitmap> jobPositions;
+    private final Map<String, RoaringBitmap> jobEmployers;
+    private final RoaringBitmap[] jobDurations;
+    private final RoaringBitmap jobDurationOverflow;
+
+    private EmployeeBitmapIndex(List<Employee> employees) {
+        this.employees = Collections.unmodifiableList(new ArrayList<>(employees));
+
+        final Map<String, RoaringBitmap> firstNames = new HashMap<>();
+        final Map<String, RoaringBitmap> lastNames = new HashMap<>();
+        final Map<String, RoaringBitmap> jobPositions = new HashMap<>();
+        final Map<String, RoaringBitmap> jobEmployers = new HashMap<>();
+        final RoaringBitmap[] jobDurations = new RoaringBitmap[DURATION_BUCKETS];
+        final RoaringBitmap jobDurationOverflow = new RoaringBitmap();
+        int[] jobOwner = new int[16];
+        int[] duration = new int[16];
+        int jobs = 0;
+
+        for (int e = 0; e < this.employees.size(); e++) {
+            final Employee employee = this.employees.get(e);
+            add(firstNames, employee.getPerson().getFirstName(), e);
+            add(lastNames, employee.getPerson().getLastName(), e);
+            for (JobHistoryEntry j : employee.getJobHistory()) {
+                if (jobs == jobOwner.length) {
+                    jobOwner = Arrays.copyOf(jobOwner, jobs * 2);
+                    duration = Arrays.copyOf(duration, jobs * 2);
+                }
+                jobOwner[jobs] = e;
+                duration[jobs] = j.getDuration();
+                add(jobPositions, j.getPosition(), jobs);
+                add(jobEmployers, j.getEmployer(), jobs);
+                final int d = j.getDuration();
+                if (d >= 0 && d < DURATION_BUCKETS) {
+                    if (jobDurations[d] == null) {
+                        jobDurations[d] = new RoaringBitmap();
+                    }
+                    jobDurations[d].add(jobs);
+                } else {
+                    jobDurationOverflow.add(jobs);
+                }
+                jobs++;
+            }
+        }
+
+        this.jobOwner = Arrays.copyOf(jobOwner, jobs);
+        this.duration = Arrays.copyOf(duration, jobs);
+        this.all = RoaringBitmap.bitmapOfRange(0, this.employees.size());
+        this.firstNames = optimize(firstNames);
+        this.lastNames = optimize(lastNames);
+        this.jobPositions = optimize(jobPositions);
+        this.jobEmployers = optimize(jobEmployers);
+        for (RoaringBitmap bucket : jobDurations) {
+            if (bucket != null) {
+                bucket.runOptimize();
+            }
+        }
+        this.jobDurations = jobDurations;
+        jobDurationOverflow.runOptimize();
+        this.jobDurationOverflow = jobDurationOverflow;
+        this.positions = byEmployee(this.jobPositions);
+        this.employers = byEmployee(this.jobEmployers);
+    }
+
+    public static EmployeeBitmapIndex of(List<Employee> employees) {
+        return new EmployeeBitmapIndex(employees);
+    }
+
+    public int size() {
+        return employees.size();
+    }
+
+    public int jobs() {
+        return jobOwner.length;
+    }
+
+    // Returned bitmaps belong to the caller and may be modified in place; select() reads the
+    // index bitmaps without copying them
+
+    public RoaringBitmap all() {
+        return all.clone();
+    }
+
+    public RoaringBitmap firstName(String firstName) {
+        return copy(firstNames, firstName);
+    }
+
+    public RoaringBitmap lastName(String lastName) {
+        return copy(lastNames, lastName);
+    }
+
+    // employees with at least one job at the position
+    public RoaringBitmap position(String position) {
+        return copy(positions, position);
+    }
+
+    // employees with at least one job at the employer
+    public RoaringBitmap employer(String employer) {
+        return copy(employers, employer);
+    }
+
+    public RoaringBitmap jobsWithPosition(String position) {
+        return copy(jobPositions, position);
+    }
+
+    public RoaringBitmap jobsWithEmployer(String employer) {
+        return copy(jobEmployers, employer);
+    }
+
+    // jobs with from <= duration <= to
+    public RoaringBitmap jobsWithDuration(int from, int to) {
+        final List<RoaringBitmap> buckets = new ArrayList<>();
+        for (int d = Math.max(from, 0); d <= to && d < DURATION_BUCKETS; d++) {
+            if (jobDurations[d] != null) {
+                buckets.add(jobDurations[d]);
+            }
+        }
+        final RoaringBitmap result = FastAggregation.or(buckets.iterator());
+        if (from < 0 || to >= DURATION_BUCKETS) {
+            final IntIterator jobs = jobDurationOverflow.getIntIterator();
+            while (jobs.hasNext()) {
+                final int job = jobs.next();
+                if (duration[job] >= from && duration[job] <= to) {
+                    result.add(job);
+                }
+            }
+        }
+        return result;
+    }
+
+    // job ordinals -> ordinals of their employees
+    public RoaringBitmap anyJob(RoaringBitmap jobs) {
+        final int[] owners = new int[jobs.getCardinality()];
+        int size = 0;
+        final IntIterator it = jobs.getIntIterator();
+        while (it.hasNext()) {
+            final int owner = jobOwner[it.next()];
+            // job ordinals of one employee are adjacent, so owners come sorted
+            if (size == 0 || owners[size - 1] != owner) {
+                owners[size++] = owner;
+            }
+        }
+        return RoaringBitmap.bitmapOf(Arrays.copyOf(owners, size));
+    }
+
+    public static RoaringBitmap and(RoaringBitmap... bitmaps) {
+        return FastAggregation.and(bitmaps);
+    }
+
+    public static RoaringBitmap or(RoaringBitmap... bitmaps) {
+        return FastAggregation.or(bitmaps);
+    }
+
+    public RoaringBitmap not(RoaringBitmap employees) {
+        return RoaringBitmap.andNot(all, employees);
+    }
+
+    // only the selected employees are read, in snapshot order
+    public List<Employee> get(RoaringBitmap selected) {
+        final List<Employee> result = new ArrayList<>(selected.getCardinality());
+        selected.forEach((int e) -> result.add(employees.get(e)));
+        return result;
+    }
+
+    // employees matching the condition; the parts bitmaps can not answer are tested on the survivors only
+    public List<Employee> select(Expressions.Condition condition) {
+        final Compiler compiler = new Compiler(false);
+        final RoaringBitmap candidates = condition.accept(compiler);
+        final List<Employee> result = get(candidates == null ? all : candidates);
+        if (!compiler.exact) {
+            result.removeIf(e -> !condition.test(e));
+        }
+        return result;
+    }
+
+    // Condition -> bitmap of employees (or of jobs inside anyJob), null if unsupported.
+    // A result is a superset of the matches unless all of its parts were supported (exact).
+    private class Compiler implements Expressions.Visitor<RoaringBitmap> {
+        private final boolean jobs;
+        private boolean exact = true;
+
+        private Compiler(boolean jobs) {
+            this.jobs = jobs;
+        }
+
+        @Override
+        public RoaringBitmap visitComparison(Expressions.Comparison comparison) {
+            final RoaringBitmap result = jobs ? jobComparison(comparison) : personComparison(comparison);
+            if (result == null) {
+                exact = false;
+            }
+            return result;
+        }
+
+        private RoaringBitmap personComparison(Expressions.Comparison comparison) {
+            if (comparison.getOperator() != Expressions.Operator.EQ || !(comparison.getValue() instanceof String)) {
+                return null;
+            }
+            switch (comparison.getField().getPath()) {
+                case "person.firstName":
+                    return shared(firstNames, (String) comparison.getValue());
+                case "person.lastName":
+                    return shared(lastNames, (String) comparison.getValue());
+                default:
+                    return null;
+            }
+        }
+
+        private RoaringBitmap jobComparison(Expressions.Comparison comparison) {
+            final Object value = comparison.getValue();
+            switch (comparison.getField().getPath()) {
+                case "position":
+                    return comparison.getOperator() == Expressions.Operator.EQ && value instanceof String
+                            ? shared(jobPositions, (String) value) : null;
+                case "employer":
+                    return comparison.getOperator() == Expressions.Operator.EQ && value instanceof String
+                            ? shared(jobEmployers, (String) value) : null;
+                case "duration":
+                    return value instanceof Integer ? durationRange(comparison.getOperator(), (Integer) value) : null;
+                default:
+                    return null;
+            }
+        }
+
+        private RoaringBitmap durationRange(Expressions.Operator operator, long value) {
+            switch (operator) {
+                case EQ:
+                    return jobsWithDuration((int) value, (int) value);
+                case LT:
+                    return value == Integer.MIN_VALUE ? new RoaringBitmap() : jobsWithDuration(Integer.MIN_VALUE, (int) value - 1);
+                case LE:
+                    return jobsWithDuration(Integer.MIN_VALUE, (int) value);
+                case GT:
+                    return value == Integer.MAX_VALUE ? new RoaringBitmap() : jobsWithDuration((int) value + 1, Integer.MAX_VALUE);
+                case GE:
+                    return jobsWithDuration((int) value, Integer.MAX_VALUE);
+                default:
+                    return null;
+            }
+        }
+
+        @Override
+        public RoaringBitmap visitAnd(Expressions.And and) {
+            final List<RoaringBitmap> supported = new ArrayList<>();
+            for (Expressions.Condition condition : and.getConditions()) {
+                final RoaringBitmap bitmap = condition.accept(this);
+                if (bitmap != null) {
+                    supported.add(bitmap);
+                }
+            }
+            return supported.isEmpty() ? null : FastAggregation.and(supported.iterator());
+        }
+
+        @Override
+        public RoaringBitmap visitOr(Expressions.Or or) {
+            final List<RoaringBitmap> bitmaps = new ArrayList<>();
+            for (Expressions.Condition condition : or.getConditions()) {
+                final RoaringBitmap bitmap = condition.accept(this);
+                if (bitmap == null) {
+                    return null;
+                }
+                bitmaps.add(bitmap);
+            }
+            return FastAggregation.or(bitmaps.iterator());
+        }
+
+        // the complement of a superset is not a superset, so only exact operands are negated
+        @Override
+        public RoaringBitmap visitNot(Expressions.Not not) {
+            final Compiler operand = new Compiler(jobs);
+            final RoaringBitmap bitmap = not.getCondition().accept(operand);
+            if (bitmap == null || !operand.exact) {
+                exact = false;
+                return null;
+            }
+            return RoaringBitmap.andNot(jobs ? RoaringBitmap.bitmapOfRange(0, jobOwner.length) : all, bitmap);
+        }
+
+        @Override
+        public RoaringBitmap visitAnyJob(Expressions.AnyJob anyJob) {
+            if (jobs) {
+                exact = false;
+                return null;
+            }
+            final Compiler jobCondition = new Compiler(true);
+            final RoaringBitmap bitmap = anyJob.getCondition().accept(jobCondition);
+            exact &= jobCondition.exact;
+            return bitmap == null ? null : anyJob(bitmap);
+        }
+    }
+
+    // the bitmap of the index itself, for the Compiler, whose results never leave the index
+    private static RoaringBitmap shared(Map<String, RoaringBitmap> bitmaps, String key) {
+        return bitmaps.getOrDefault(key, EMPTY);
+    }
+
+    private static RoaringBitmap copy(Map<String, RoaringBitmap> bitmaps, String key) {
+        final RoaringBitmap bitmap = bitmaps.get(key);
+        return bitmap == null ? new RoaringBitmap() : bitmap.clone();
+    }
+
+    private static void add(Map<String, RoaringBitmap> bitmaps, String key, int ordinal) {
+        bitmaps.computeIfAbsent(key, k -> new RoaringBitmap()).add(ordinal);
+    }
+
+    private static Map<String, RoaringBitmap> optimize(Map<String, RoaringBitmap> bitmaps) {
+        bitmaps.values().forEach(RoaringBitmap::runOptimize);
+        return bitmaps;
+    }
+
+    private Map<String, RoaringBitmap> byEmployee(Map<String, RoaringBitmap> jobBitmaps) {
+        final Map<String, RoaringBitmap> result = new HashMap<>();
+        jobBitmaps.forEach((key, jobs) -> {
+            final RoaringBitmap employees = anyJob(jobs);
+            employees.runOptimize();
+            result.put(key, employees);
+        });
+        return result;
+    }
+}
@@ -0,0 +1,242 @@
+package data;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// One employee per line, UTF-8, no quoting:
+//   firstName,lastName,age,duration|position|employer;duration|position|employer
+// The file is read through memory mapped windows, records are parsed straight from the mapped bytes
+// and every iterator() reads the file again, so it is never held in memory as a whole.
+public class EmployeeCsvSource implements Iterable<Employee> {
+    private static final int DEFAULT_WINDOW = 64 << 20;
+
+    private final Path path;
+    private final int window;
+
+    public EmployeeCsvSource(Path path) {
+        this(path, DEFAULT_WINDOW);
+    }
+
+    // a record must fit into one window
+    public EmployeeCsvSource(Path path, int window) {
+        if (window < 1) {
+            throw new IllegalArgumentException("window must be positive: " + window);
+        }
+        this.path = path;
+        this.window = window;
+    }
+
+    @Override
+    public Iterator<Employee> iterator() {
+        return new EmployeeIterator(new Cursor());
+    }
+
+    public EmployeeTable toTable() {
+        final EmployeeTable.Builder builder = new EmployeeTable.Builder();
+        final Cursor cursor = new Cursor();
+        final RecordHandler handler = new RecordHandler() {
+            @Override
+            public void person(String firstName, String lastName, int age) {
+                builder.addPerson(firstName, lastName, age);
+            }
+
+            @Override
+            public void job(int duration, String position, String employer) {
+                builder.addJob(duration, position, employer);
+            }
+        };
+        while (cursor.next(handler)) {
+            // all work is done by the handler
+        }
+
+        return builder.build();
+    }
+
+    private interface RecordHandler {
+        void person(String firstName, String lastName, int age);
+
+        void job(int duration, String position, String employer);
+    }
+
+    private static class EmployeeIterator implements Iterator<Employee>, RecordHandler {
+        private final Cursor cursor;
+        private Person person;
+        private PersistentList.Builder<JobHistoryEntry> jobs;
+        private Employee next;
+
+        private EmployeeIterator(Cursor cursor) {
+            this.cursor = cursor;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null && cursor.next(this)) {
+                // the history is built in place and taken over by the employee as is
+                next = new Employee(person, jobs.build());
+            }
+            return next != null;
+        }
+
+        @Override
+        public Employee next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final Employee result = next;
+            next = null;
+            return result;
+        }
+
+        @Override
+        public void person(String firstName, String lastName, int age) {
+            person = new Person(firstName, lastName, age);
+            jobs = new PersistentList.Builder<>();
+        }
+
+        @Override
+        public void job(int duration, String position, String employer) {
+            jobs.add(new JobHistoryEntry(duration, position, employer));
+        }
+    }
+
+    private class Cursor {
+        private final long fileSize;
+        private MappedByteBuffer buffer;
+        private long windowStart;
+        // of the record being parsed, 1-based
+        private long line;
+        private byte[] scratch = new byte[64];
+
+        private Cursor() {
+            try {
+                fileSize = Files.size(path);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            map(0);
+        }
+
+        // the mapping stays valid after the channel is closed
+        private void map(long start) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(window, fileSize - start));
+                windowStart = start;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        // false at the end of file
+        private boolean next(RecordHandler handler) {
+            while (windowStart + buffer.position() < fileSize) {
+                final int start = buffer.position();
+                int end = indexOf((byte) '\n', start, buffer.limit());
+                if (end < 0) {
+                    if (windowStart + buffer.limit() < fileSize) {
+                        if (start == 0) {
+                            throw new IllegalStateException("line " + (line + 1) + ": record is longer than the window " + window);
+                        }
+                        map(windowStart + start);
+                        continue;
+                    }
+                    end = buffer.limit();
+                }
+
+                buffer.position(Math.min(end + 1, buffer.limit()));
+                line++;
+                if (end > start && buffer.get(end - 1) == '\r') {
+                    end--;
+                }
+                if (end > start) {
+                    parse(start, end, handler);
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        private void parse(int start, int end, RecordHandler handler) {
+            final int firstNameEnd = required(start, end, ',');
+            final int lastNameEnd = required(firstNameEnd + 1, end, ',');
+            final int ageEnd = optional(lastNameEnd + 1, end, ',');
+            handler.person(string(start, firstNameEnd), string(firstNameEnd + 1, lastNameEnd), number(lastNameEnd + 1, ageEnd));
+
+            int job = ageEnd + 1;
+            while (job < end) {
+                final int jobEnd = optional(job, end, ';');
+                final int durationEnd = required(job, jobEnd, '|');
+                final int positionEnd = required(durationEnd + 1, jobEnd, '|');
+                handler.job(number(job, durationEnd), string(durationEnd + 1, positionEnd), string(positionEnd + 1, jobEnd));
+                job = jobEnd + 1;
+            }
+        }
+
+        private int required(int from, int to, char separator) {
+            final int index = indexOf((byte) separator, from, to);
+            if (index < 0) {
+                throw error("missing '" + separator + "'", from);
+            }
+            return index;
+        }
+
+        private int optional(int from, int to, char separator) {
+            final int index = indexOf((byte) separator, from, to);
+            return index < 0 ? to : index;
+        }
+
+        private int indexOf(byte b, int from, int to) {
+            for (int i = from; i < to; i++) {
+                if (buffer.get(i) == b) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private String string(int from, int to) {
+            final int length = to - from;
+            if (scratch.length < length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            for (int i = 0; i < length; i++) {
+                scratch[i] = buffer.get(from + i);
+            }
+            return new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+
+        private int number(int from, int to) {
+            final boolean negative = from < to && buffer.get(from) == '-';
+            final int digits = negative ? from + 1 : from;
+            if (digits >= to) {
+                throw error("empty number", from);
+            }
+            // accumulated negative, so Integer.MIN_VALUE fits
+            final long limit = negative ? Integer.MIN_VALUE : -Integer.MAX_VALUE;
+            long result = 0;
+            for (int i = digits; i < to; i++) {
+                final int digit = buffer.get(i) - '0';
+                if (digit < 0 || digit > 9) {
+                    throw error("not a number", i);
+                }
+                result = result * 10 - digit;
+                if (result < limit) {
+                    throw error("number out of int range", from);
+                }
+            }
+            return (int) (negative ? result : -result);
+        }
+
+        private IllegalStateException error(String message, int at) {
+            return new IllegalStateException("line " + line + ": " + message + " at byte " + (windowStart + at));
+        }
+    }
+}
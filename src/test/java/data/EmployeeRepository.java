@@ -0,0 +1,294 @@
+package data;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+// Equal employees are stored once. Indexes are multi-valued and kept up to date on add/remove.
+public class EmployeeRepository {
+    private final Set<Employee> employees = new LinkedHashSet<>();
+    private final List<Index<?>> indexes = new ArrayList<>();
+    // by field path, for Query.where: "person.firstName" in personIndexes, "employer" of anyJob in jobIndexes
+    private final Map<String, Index<?>> personIndexes = new HashMap<>();
+    private final Map<String, Index<?>> jobIndexes = new HashMap<>();
+    // Pushdown: a comparison that no key of an index can equal
+    private static final Object NO_KEY = new Object();
+
+    public static class Index<K> {
+        private final Function<Employee, Collection<K>> keys;
+        // boxed property type of an index by property name, null otherwise
+        private final Class<?> keyType;
+        private final Map<K, Set<Employee>> buckets = new HashMap<>();
+
+        private Index(Function<Employee, Collection<K>> keys, Class<?> keyType) {
+            this.keys = keys;
+            this.keyType = keyType;
+        }
+
+        public Set<Employee> get(K key) {
+            final Set<Employee> bucket = buckets.get(key);
+            return bucket == null ? Collections.<Employee>emptySet() : Collections.unmodifiableSet(bucket);
+        }
+
+        public int count(K key) {
+            final Set<Employee> bucket = buckets.get(key);
+            return bucket == null ? 0 : bucket.size();
+        }
+
+        private void add(Employee e) {
+            for (K key : keys.apply(e)) {
+                buckets.computeIfAbsent(key, k -> new LinkedHashSet<>()).add(e);
+            }
+        }
+
+        private void remove(Employee e) {
+            for (K key : keys.apply(e)) {
+                final Set<Employee> bucket = buckets.get(key);
+                if (bucket != null && bucket.remove(e) && bucket.isEmpty()) {
+                    buckets.remove(key);
+                }
+            }
+        }
+    }
+
+    public EmployeeRepository() {
+    }
+
+    public EmployeeRepository(Collection<Employee> employees) {
+        employees.forEach(this::add);
+    }
+
+    public <K> Index<K> indexByPerson(Function<Person, K> key) {
+        return indexByPerson(key, null);
+    }
+
+    // employee is in the bucket of every key of its job history
+    public <K> Index<K> indexByJob(Function<JobHistoryEntry, K> key) {
+        return indexByJob(key, null);
+    }
+
+    // index used by Query.where for field("person.<property>").eq(key)
+    public Index<Object> indexByPerson(String property) {
+        final Function<Person, Object> key = PropertyAccessors.function(Person.class, property);
+        final Index<Object> index = indexByPerson(key, PropertyAccessors.propertyType(Person.class, property));
+        personIndexes.put("person." + property, index);
+        return index;
+    }
+
+    // index used by Query.where for anyJob(field("<property>").eq(key))
+    public Index<Object> indexByJob(String property) {
+        final Function<JobHistoryEntry, Object> key = PropertyAccessors.function(JobHistoryEntry.class, property);
+        final Index<Object> index = indexByJob(key, PropertyAccessors.propertyType(JobHistoryEntry.class, property));
+        jobIndexes.put(property, index);
+        return index;
+    }
+
+    private <K> Index<K> indexByPerson(Function<Person, K> key, Class<?> keyType) {
+        return index(e -> Collections.singleton(key.apply(e.getPerson())), keyType);
+    }
+
+    private <K> Index<K> indexByJob(Function<JobHistoryEntry, K> key, Class<?> keyType) {
+        return index(e -> {
+            final Set<K> keys = new HashSet<>();
+            e.forEachJob(j -> keys.add(key.apply(j)));
+            return keys;
+        }, keyType);
+    }
+
+    private <K> Index<K> index(Function<Employee, Collection<K>> keys, Class<?> keyType) {
+        final Index<K> index = new Index<>(keys, keyType == null ? null : PropertyAccessors.wrap(keyType));
+        employees.forEach(index::add);
+        indexes.add(index);
+        return index;
+    }
+
+    public boolean add(Employee e) {
+        if (!employees.add(e)) {
+            return false;
+        }
+        indexes.forEach(index -> index.add(e));
+        return true;
+    }
+
+    public boolean remove(Employee e) {
+        if (!employees.remove(e)) {
+            return false;
+        }
+        indexes.forEach(index -> index.remove(e));
+        return true;
+    }
+
+    public int size() {
+        return employees.size();
+    }
+
+    public Query query() {
+        return new Query(Collections.<Equality<?>>emptyList(), null);
+    }
+
+    private static class Equality<K> {
+        private final Index<K> index;
+        private final K key;
+
+        private Equality(Index<K> index, K key) {
+            this.index = index;
+            this.key = key;
+        }
+
+        private int count() {
+            return index.count(key);
+        }
+
+        private Set<Employee> bucket() {
+            return index.get(key);
+        }
+    }
+
+    // Like LazyFilterUtil, but the smallest indexed equality bucket is scanned instead of all employees
+    public class Query {
+        private final List<Equality<?>> equalities;
+        private final Predicate<Employee> condition;
+
+        private Query(List<Equality<?>> equalities, Predicate<Employee> condition) {
+            this.equalities = equalities;
+            this.condition = condition;
+        }
+
+        public <K> Query whereEquals(Index<K> index, K key) {
+            final List<Equality<?>> newEqualities = new ArrayList<>(equalities);
+            newEqualities.add(new Equality<>(index, key));
+            return new Query(newEqualities, condition);
+        }
+
+        // equalities of the top level conjunction on indexed fields narrow the scan, the whole condition is still tested
+        public Query where(Expressions.Condition condition) {
+            final List<Equality<?>> newEqualities = new ArrayList<>(equalities);
+            newEqualities.addAll(condition.accept(new Pushdown(personIndexes, true)));
+            return new Query(newEqualities, this.condition).filter(condition::test);
+        }
+
+        public Query filter(Predicate<Employee> condition) {
+            return new Query(equalities, this.condition == null ? condition : this.condition.and(condition));
+        }
+
+        public List<Employee> force() {
+            Equality<?> source = null;
+            for (Equality<?> equality : equalities) {
+                if (source == null || equality.count() < source.count()) {
+                    source = equality;
+                }
+            }
+
+            final List<Set<Employee>> otherBuckets = new ArrayList<>();
+            for (Equality<?> equality : equalities) {
+                if (equality != source) {
+                    otherBuckets.add(equality.bucket());
+                }
+            }
+
+            final List<Employee> result = new ArrayList<>();
+            for (Employee e : source == null ? employees : source.bucket()) {
+                if (inAll(otherBuckets, e) && (condition == null || condition.test(e))) {
+                    result.add(e);
+                }
+            }
+
+            return result;
+        }
+
+        private boolean inAll(List<Set<Employee>> buckets, Employee e) {
+            for (Set<Employee> bucket : buckets) {
+                if (!bucket.contains(e)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+
+    // Condition -> equalities implied by it, only through && and anyJob
+    private class Pushdown implements Expressions.Visitor<List<Equality<?>>> {
+        private final Map<String, Index<?>> indexes;
+        private final boolean employeeLevel;
+
+        private Pushdown(Map<String, Index<?>> indexes, boolean employeeLevel) {
+            this.indexes = indexes;
+            this.employeeLevel = employeeLevel;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public List<Equality<?>> visitComparison(Expressions.Comparison comparison) {
+            final Index<Object> index = (Index<Object>) indexes.get(comparison.getField().getPath());
+            if (index == null || comparison.getOperator() != Expressions.Operator.EQ) {
+                return Collections.emptyList();
+            }
+            final Object key = key(index.keyType, comparison.getValue());
+            if (key == NO_KEY) {
+                // left to the condition, which is still tested
+                return Collections.emptyList();
+            }
+            return Collections.<Equality<?>>singletonList(new Equality<>(index, key));
+        }
+
+        // Comparison.test compares numbers by value (age == 30L holds for an int 30), the index by equals:
+        // an integral value is converted to an integral property type, other mismatches are not pushed down
+        private Object key(Class<?> keyType, Object value) {
+            if (keyType == null || !(value instanceof Number) || keyType.isInstance(value)) {
+                return value;
+            }
+            if (!Expressions.Comparison.isIntegral(value)) {
+                return NO_KEY;
+            }
+            final long number = ((Number) value).longValue();
+            if (keyType == Long.class) {
+                return number;
+            }
+            if (keyType == Integer.class && (int) number == number) {
+                return (int) number;
+            }
+            if (keyType == Short.class && (short) number == number) {
+                return (short) number;
+            }
+            if (keyType == Byte.class && (byte) number == number) {
+                return (byte) number;
+            }
+            return NO_KEY;
+        }
+
+        @Override
+        public List<Equality<?>> visitAnd(Expressions.And and) {
+            final List<Equality<?>> result = new ArrayList<>();
+            for (Expressions.Condition condition : and.getConditions()) {
+                result.addAll(condition.accept(this));
+            }
+            return result;
+        }
+
+        @Override
+        public List<Equality<?>> visitOr(Expressions.Or or) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public List<Equality<?>> visitNot(Expressions.Not not) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public List<Equality<?>> visitAnyJob(Expressions.AnyJob anyJob) {
+            return employeeLevel
+                    ? anyJob.getCondition().accept(new Pushdown(jobIndexes, false))
+                    : Collections.<Equality<?>>emptyList();
+        }
+    }
+}
@@ -0,0 +1,412 @@
+package data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+
+// Struct of arrays: one column per field, strings are stored as codes of the table's own StringDictionary,
+// jobs of row r are jobOffset[r] until jobOffset[r + 1] in the job columns.
+// Queries run over the columns with rows() and anyJob(), only the surviving rows are materialized with employees().
+//
+// The table is also an Iterable of reusable flyweight views with the getters of Person, JobHistoryEntry and Employee,
+// so the lazy helpers and their lambdas run over the columns without an object graph per row.
+// A view is only valid until it is moved to the next row: copy what must be kept, e.g. with toPerson().
+public class EmployeeTable implements Iterable<EmployeeTable.EmployeeView> {
+    private final int size;
+    private final int[] firstName;
+    private final int[] lastName;
+    private final int[] age;
+    private final int[] jobOffset;
+    private final int[] duration;
+    private final int[] position;
+    private final int[] employer;
+    private final StringDictionary dictionary;
+
+    private EmployeeTable(Builder builder) {
+        this.dictionary = builder.dictionary;
+        this.size = builder.size;
+        this.firstName = Arrays.copyOf(builder.firstName, size);
+        this.lastName = Arrays.copyOf(builder.lastName, size);
+        this.age = Arrays.copyOf(builder.age, size);
+        this.jobOffset = Arrays.copyOf(builder.jobOffset, size + 1);
+        this.duration = Arrays.copyOf(builder.duration, builder.jobs);
+        this.position = Arrays.copyOf(builder.position, builder.jobs);
+        this.employer = Arrays.copyOf(builder.employer, builder.jobs);
+    }
+
+    public static EmployeeTable of(List<Employee> employees) {
+        final Builder builder = new Builder();
+        employees.forEach(builder::add);
+        return builder.build();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // -1 if the string was never encoded, so no row can match it
+    public int code(String value) {
+        return dictionary.code(value);
+    }
+
+    public String decode(int code) {
+        return dictionary.decode(code);
+    }
+
+    public int firstNameCode(int row) {
+        return firstName[row];
+    }
+
+    public String firstName(int row) {
+        return dictionary.decode(firstName[row]);
+    }
+
+    public int lastNameCode(int row) {
+        return lastName[row];
+    }
+
+    public String lastName(int row) {
+        return dictionary.decode(lastName[row]);
+    }
+
+    public int age(int row) {
+        return age[row];
+    }
+
+    public int jobStart(int row) {
+        return jobOffset[row];
+    }
+
+    public int jobEnd(int row) {
+        return jobOffset[row + 1];
+    }
+
+    public int duration(int job) {
+        return duration[job];
+    }
+
+    public int positionCode(int job) {
+        return position[job];
+    }
+
+    public String position(int job) {
+        return dictionary.decode(position[job]);
+    }
+
+    public int employerCode(int job) {
+        return employer[job];
+    }
+
+    public String employer(int job) {
+        return dictionary.decode(employer[job]);
+    }
+
+    public boolean anyJob(int row, IntPredicate condition) {
+        for (int job = jobOffset[row]; job < jobOffset[row + 1]; job++) {
+            if (condition.test(job)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    // [row] -> (row -> boolean) -> [row]
+    public int[] rows(IntPredicate condition) {
+        int[] result = new int[16];
+        int count = 0;
+        for (int row = 0; row < size; row++) {
+            if (condition.test(row)) {
+                if (count == result.length) {
+                    result = Arrays.copyOf(result, count * 2);
+                }
+                result[count++] = row;
+            }
+        }
+
+        return Arrays.copyOf(result, count);
+    }
+
+    public Person person(int row) {
+        return new Person(firstName(row), lastName(row), age[row]);
+    }
+
+    public JobHistoryEntry job(int job) {
+        return new JobHistoryEntry(duration[job], position(job), employer(job));
+    }
+
+    public Employee employee(int row) {
+        final List<JobHistoryEntry> jobs = new ArrayList<>(jobEnd(row) - jobStart(row));
+        for (int job = jobStart(row); job < jobEnd(row); job++) {
+            jobs.add(job(job));
+        }
+
+        return new Employee(person(row), jobs);
+    }
+
+    // [row] -> [Employee], a new object graph per row
+    public List<Employee> employees(int[] rows) {
+        final List<Employee> result = new ArrayList<>(rows.length);
+        for (int row : rows) {
+            result.add(employee(row));
+        }
+
+        return result;
+    }
+
+    public EmployeeView view(int row) {
+        return new EmployeeView().moveTo(row);
+    }
+
+    // One view is reused for all rows
+    @Override
+    public void forEach(Consumer<? super EmployeeView> action) {
+        final EmployeeView view = new EmployeeView();
+        for (int row = 0; row < size; row++) {
+            action.accept(view.moveTo(row));
+        }
+    }
+
+    // Every iterator has its own view, which is reused for all rows of that iterator
+    @Override
+    public Iterator<EmployeeView> iterator() {
+        return new Iterator<EmployeeView>() {
+            private final EmployeeView view = new EmployeeView();
+            private int row;
+
+            @Override
+            public boolean hasNext() {
+                return row < size;
+            }
+
+            @Override
+            public EmployeeView next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return view.moveTo(row++);
+            }
+        };
+    }
+
+    // Predicates comparing dictionary codes, so no String is decoded per row
+
+    public Predicate<PersonView> firstNameIs(String value) {
+        final int code = code(value);
+        return p -> firstName[p.row] == code;
+    }
+
+    public Predicate<PersonView> lastNameIs(String value) {
+        final int code = code(value);
+        return p -> lastName[p.row] == code;
+    }
+
+    public Predicate<JobView> positionIs(String value) {
+        final int code = code(value);
+        return j -> position[j.job] == code;
+    }
+
+    public Predicate<JobView> employerIs(String value) {
+        final int code = code(value);
+        return j -> employer[j.job] == code;
+    }
+
+    public class PersonView {
+        private int row;
+
+        private PersonView() {
+        }
+
+        private PersonView moveTo(int row) {
+            this.row = row;
+            return this;
+        }
+
+        public int getRow() {
+            return row;
+        }
+
+        public String getFirstName() {
+            return firstName(row);
+        }
+
+        public String getLastName() {
+            return lastName(row);
+        }
+
+        public int getAge() {
+            return age[row];
+        }
+
+        public Person toPerson() {
+            return person(row);
+        }
+
+        @Override
+        public String toString() {
+            return "PersonView@" + row + toPerson();
+        }
+    }
+
+    public class JobView {
+        private int job;
+
+        private JobView() {
+        }
+
+        private JobView moveTo(int job) {
+            this.job = job;
+            return this;
+        }
+
+        public int getDuration() {
+            return duration[job];
+        }
+
+        public String getPosition() {
+            return position(job);
+        }
+
+        public String getEmployer() {
+            return employer(job);
+        }
+
+        public JobHistoryEntry toJobHistoryEntry() {
+            return job(job);
+        }
+
+        @Override
+        public String toString() {
+            return "JobView@" + job + toJobHistoryEntry();
+        }
+    }
+
+    public class EmployeeView {
+        private final PersonView person = new PersonView();
+        private final JobView job = new JobView();
+        private int row;
+
+        private EmployeeView() {
+        }
+
+        public EmployeeView moveTo(int row) {
+            if (row < 0 || row >= size) {
+                throw new IndexOutOfBoundsException("row " + row + ", size " + size);
+            }
+            this.row = row;
+            person.moveTo(row);
+            return this;
+        }
+
+        public int getRow() {
+            return row;
+        }
+
+        public PersonView getPerson() {
+            return person;
+        }
+
+        public int getJobCount() {
+            return jobOffset[row + 1] - jobOffset[row];
+        }
+
+        // the same JobView is passed for every job
+        public boolean anyJob(Predicate<? super JobView> condition) {
+            for (int j = jobOffset[row]; j < jobOffset[row + 1]; j++) {
+                if (condition.test(job.moveTo(j))) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        public void forEachJob(Consumer<? super JobView> action) {
+            for (int j = jobOffset[row]; j < jobOffset[row + 1]; j++) {
+                action.accept(job.moveTo(j));
+            }
+        }
+
+        public Employee toEmployee() {
+            return employee(row);
+        }
+
+        @Override
+        public String toString() {
+            return "EmployeeView@" + row + toEmployee();
+        }
+    }
+
+    public static class Builder {
+        private int size;
+        private int jobs;
+        private int[] firstName = new int[16];
+        private int[] lastName = new int[16];
+        private int[] age = new int[16];
+        private int[] jobOffset = new int[17];
+        private int[] duration = new int[16];
+        private int[] position = new int[16];
+        private int[] employer = new int[16];
+        // lives as long as the table, so high-cardinality names do not outlive it
+        private final StringDictionary dictionary = new StringDictionary();
+
+        public Builder add(Employee employee) {
+            final Person person = employee.getPerson();
+            addPerson(person.getFirstName(), person.getLastName(), person.getAge());
+            employee.forEachJob(j -> addJob(j.getDuration(), j.getPosition(), j.getEmployer()));
+            return this;
+        }
+
+        // jobs added after this call belong to this person
+        public Builder addPerson(String firstName, String lastName, int age) {
+            return addPersonCodes(dictionary.encode(firstName), dictionary.encode(lastName), age);
+        }
+
+        private Builder addPersonCodes(int firstName, int lastName, int age) {
+            if (size == this.age.length) {
+                final int capacity = size * 2;
+                this.firstName = Arrays.copyOf(this.firstName, capacity);
+                this.lastName = Arrays.copyOf(this.lastName, capacity);
+                this.age = Arrays.copyOf(this.age, capacity);
+                this.jobOffset = Arrays.copyOf(this.jobOffset, capacity + 1);
+            }
+            this.firstName[size] = firstName;
+            this.lastName[size] = lastName;
+            this.age[size] = age;
+            size++;
+            this.jobOffset[size] = jobs;
+            return this;
+        }
+
+        public Builder addJob(int duration, String position, String employer) {
+            return addJobCodes(duration, dictionary.encode(position), dictionary.encode(employer));
+        }
+
+        private Builder addJobCodes(int duration, int position, int employer) {
+            if (size == 0) {
+                throw new IllegalStateException("addPerson must be called before addJob");
+            }
+            if (jobs == this.duration.length) {
+                final int capacity = jobs * 2;
+                this.duration = Arrays.copyOf(this.duration, capacity);
+                this.position = Arrays.copyOf(this.position, capacity);
+                this.employer = Arrays.copyOf(this.employer, capacity);
+            }
+            this.duration[jobs] = duration;
+            this.position[jobs] = position;
+            this.employer[jobs] = employer;
+            jobs++;
+            this.jobOffset[size] = jobs;
+            return this;
+        }
+
+        public EmployeeTable build() {
+            return new EmployeeTable(this);
+        }
+    }
+}
@@ -0,0 +1,365 @@
+package data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+// Predicates and functions that keep their expression tree, so they can be inspected, printed and
+// pushed down to indexes (see EmployeeRepository.Query.where), and still run as plain lambdas:
+//   field("person.firstName").eq("John").and(anyJob(field("employer").eq("epam").and(field("duration").gt(1))))
+// Fields are property paths (see PropertyAccessors), resolved against the class of the tested object
+// on first use, so a wrong path fails when the condition is first tested.
+public class Expressions {
+
+    private Expressions() {
+    }
+
+    public static Field field(String path) {
+        return new Field(path);
+    }
+
+    // an employee with at least one job matching the condition
+    public static Condition anyJob(Condition jobCondition) {
+        return new AnyJob(jobCondition);
+    }
+
+    public static Condition not(Condition condition) {
+        return new Not(condition);
+    }
+
+    public interface Visitor<R> {
+        R visitComparison(Comparison comparison);
+
+        R visitAnd(And and);
+
+        R visitOr(Or or);
+
+        R visitNot(Not not);
+
+        R visitAnyJob(AnyJob anyJob);
+    }
+
+    public enum Operator {
+        EQ("=="), NE("!="), LT("<"), LE("<="), GT(">"), GE(">=");
+
+        private final String symbol;
+
+        Operator(String symbol) {
+            this.symbol = symbol;
+        }
+
+        private boolean test(int comparison) {
+            switch (this) {
+                case EQ:
+                    return comparison == 0;
+                case NE:
+                    return comparison != 0;
+                case LT:
+                    return comparison < 0;
+                case LE:
+                    return comparison <= 0;
+                case GT:
+                    return comparison > 0;
+                default:
+                    return comparison >= 0;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return symbol;
+        }
+    }
+
+    // Object -> property value; the accessor is cached for the last seen class
+    public static class Field implements Function<Object, Object> {
+        private final String path;
+        private volatile Accessor accessor;
+
+        private Field(String path) {
+            this.path = path;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Object apply(Object target) {
+            Accessor current = accessor;
+            if (current == null || current.type != target.getClass()) {
+                current = new Accessor(target.getClass(), PropertyAccessors.function((Class<Object>) target.getClass(), path));
+                accessor = current;
+            }
+            return current.function.apply(target);
+        }
+
+        public Condition eq(Object value) {
+            return new Comparison(this, Operator.EQ, value);
+        }
+
+        public Condition ne(Object value) {
+            return new Comparison(this, Operator.NE, value);
+        }
+
+        public Condition lt(Comparable<?> value) {
+            return new Comparison(this, Operator.LT, value);
+        }
+
+        public Condition le(Comparable<?> value) {
+            return new Comparison(this, Operator.LE, value);
+        }
+
+        public Condition gt(Comparable<?> value) {
+            return new Comparison(this, Operator.GT, value);
+        }
+
+        public Condition ge(Comparable<?> value) {
+            return new Comparison(this, Operator.GE, value);
+        }
+
+        @Override
+        public String toString() {
+            return path;
+        }
+
+        private static class Accessor {
+            private final Class<?> type;
+            private final Function<Object, Object> function;
+
+            private Accessor(Class<?> type, Function<Object, Object> function) {
+                this.type = type;
+                this.function = function;
+            }
+        }
+    }
+
+    // Predicate<Object>, so it is accepted wherever a Predicate<? super T> is
+    public abstract static class Condition implements Predicate<Object> {
+
+        public abstract <R> R accept(Visitor<R> visitor);
+
+        public Condition and(Condition other) {
+            return new And(Arrays.asList(this, other));
+        }
+
+        public Condition or(Condition other) {
+            return new Or(Arrays.asList(this, other));
+        }
+
+        @Override
+        public Condition negate() {
+            return new Not(this);
+        }
+    }
+
+    public static class Comparison extends Condition {
+        private final Field field;
+        private final Operator operator;
+        private final Object value;
+
+        private Comparison(Field field, Operator operator, Object value) {
+            this.field = field;
+            this.operator = operator;
+            this.value = value;
+        }
+
+        public Field getField() {
+            return field;
+        }
+
+        public Operator getOperator() {
+            return operator;
+        }
+
+        public Object getValue() {
+            return value;
+        }
+
+        @Override
+        public boolean test(Object t) {
+            final Object actual = field.apply(t);
+            if (operator == Operator.EQ || operator == Operator.NE) {
+                final boolean equal = actual instanceof Number && value instanceof Number
+                        ? compare(actual, value) == 0
+                        : Objects.equals(actual, value);
+                return equal == (operator == Operator.EQ);
+            }
+            return actual != null && operator.test(compare(actual, value));
+        }
+
+        @SuppressWarnings("unchecked")
+        private static int compare(Object actual, Object value) {
+            if (actual instanceof Number && value instanceof Number) {
+                if (isIntegral(actual) && isIntegral(value)) {
+                    return Long.compare(((Number) actual).longValue(), ((Number) value).longValue());
+                }
+                return Double.compare(((Number) actual).doubleValue(), ((Number) value).doubleValue());
+            }
+            return ((Comparable<Object>) actual).compareTo(value);
+        }
+
+        static boolean isIntegral(Object number) {
+            return number instanceof Integer || number instanceof Long || number instanceof Short || number instanceof Byte;
+        }
+
+        @Override
+        public <R> R accept(Visitor<R> visitor) {
+            return visitor.visitComparison(this);
+        }
+
+        @Override
+        public String toString() {
+            return field + " " + operator + " " + (value instanceof String ? "\"" + value + "\"" : value);
+        }
+    }
+
+    public static class And extends Condition {
+        private final List<Condition> conditions;
+
+        private And(List<Condition> conditions) {
+            this.conditions = flatten(conditions, And.class);
+        }
+
+        public List<Condition> getConditions() {
+            return conditions;
+        }
+
+        @Override
+        public boolean test(Object t) {
+            for (Condition condition : conditions) {
+                if (!condition.test(t)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public <R> R accept(Visitor<R> visitor) {
+            return visitor.visitAnd(this);
+        }
+
+        @Override
+        public String toString() {
+            return join(conditions, " && ");
+        }
+    }
+
+    public static class Or extends Condition {
+        private final List<Condition> conditions;
+
+        private Or(List<Condition> conditions) {
+            this.conditions = flatten(conditions, Or.class);
+        }
+
+        public List<Condition> getConditions() {
+            return conditions;
+        }
+
+        @Override
+        public boolean test(Object t) {
+            for (Condition condition : conditions) {
+                if (condition.test(t)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public <R> R accept(Visitor<R> visitor) {
+            return visitor.visitOr(this);
+        }
+
+        @Override
+        public String toString() {
+            return join(conditions, " || ");
+        }
+    }
+
+    public static class Not extends Condition {
+        private final Condition condition;
+
+        private Not(Condition condition) {
+            this.condition = condition;
+        }
+
+        public Condition getCondition() {
+            return condition;
+        }
+
+        @Override
+        public boolean test(Object t) {
+            return !condition.test(t);
+        }
+
+        @Override
+        public <R> R accept(Visitor<R> visitor) {
+            return visitor.visitNot(this);
+        }
+
+        @Override
+        public String toString() {
+            return "!(" + condition + ")";
+        }
+    }
+
+    public static class AnyJob extends Condition {
+        private final Condition condition;
+
+        private AnyJob(Condition condition) {
+            this.condition = condition;
+        }
+
+        public Condition getCondition() {
+            return condition;
+        }
+
+        @Override
+        public boolean test(Object t) {
+            return ((Employee) t).anyJob(condition::test);
+        }
+
+        @Override
+        public <R> R accept(Visitor<R> visitor) {
+            return visitor.visitAnyJob(this);
+        }
+
+        @Override
+        public String toString() {
+            return "anyJob(" + condition + ")";
+        }
+    }
+
+    // (a && b) && c -> a && b && c
+    private static List<Condition> flatten(List<Condition> conditions, Class<?> type) {
+        final List<Condition> result = new ArrayList<>();
+        for (Condition condition : conditions) {
+            if (type == And.class && condition instanceof And) {
+                result.addAll(((And) condition).conditions);
+            } else if (type == Or.class && condition instanceof Or) {
+                result.addAll(((Or) condition).conditions);
+            } else {
+                result.add(condition);
+            }
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    private static String join(List<Condition> conditions, String separator) {
+        final StringBuilder result = new StringBuilder("(");
+        for (int i = 0; i < conditions.size(); i++) {
+            if (i > 0) {
+                result.append(separator);
+            }
+            result.append(conditions.get(i));
+        }
+        return result.append(")").toString();
+    }
+}
@@ -1,18 +1,34 @@
 package data;
 
-import org.apache.commons.lang3.builder.EqualsBuilder;
-import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 
+import java.util.function.Predicate;
+
 public class JobHistoryEntry {
     private final int duration;
     private final String position;
     private final String employer;
+    private final int positionCode;
+    private final int employerCode;
+    private final int hash;
 
+    // position and employer are low-cardinality, so they share the global dictionary
     public JobHistoryEntry(int duration, String position, String employer) {
+        final StringDictionary dictionary = StringDictionary.global();
         this.duration = duration;
-        this.position = position;
-        this.employer = employer;
+        this.positionCode = dictionary.encode(position);
+        this.employerCode = dictionary.encode(employer);
+        this.position = dictionary.decode(positionCode);
+        this.employer = dictionary.decode(employerCode);
+        this.hash = 31 * (31 * duration + positionCode) + employerCode;
+    }
+
+    public static Predicate<JobHistoryEntry> positionIs(String position) {
+        return StringDictionary.global().equalTo(JobHistoryEntry::getPositionCode, position);
+    }
+
+    public static Predicate<JobHistoryEntry> employerIs(String employer) {
+        return StringDictionary.global().equalTo(JobHistoryEntry::getEmployerCode, employer);
     }
 
     public int getDuration() {
@@ -27,6 +43,14 @@ public class JobHistoryEntry {
         return employer;
     }
 
+    public int getPositionCode() {
+        return positionCode;
+    }
+
+    public int getEmployerCode() {
+        return employerCode;
+    }
+
     public JobHistoryEntry withDuration(int duration) {
         return new JobHistoryEntry(duration, position, employer);
     }
@@ -56,19 +80,14 @@ public class JobHistoryEntry {
 
         JobHistoryEntry that = (JobHistoryEntry) o;
 
-        return new EqualsBuilder()
-                .append(duration, that.duration)
-                .append(position, that.position)
-                .append(employer, that.employer)
-                .isEquals();
+        // equal codes <=> equal strings, see StringDictionary
+        return duration == that.duration
+                && positionCode == that.positionCode
+                && employerCode == that.employerCode;
     }
 
     @Override
     public int hashCode() {
-        return new HashCodeBuilder(17, 37)
-                .append(duration)
-                .append(position)
-                .append(employer)
-                .toHashCode();
+        return hash;
     }
 }
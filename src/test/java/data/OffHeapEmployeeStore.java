@@ -0,0 +1,476 @@
+package data;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+// Employees in direct ByteBuffer pages, outside of the java heap:
+//   person slot, 20 bytes: firstName string id, lastName string id, age, first job index (long)
+//   job slot, 12 bytes: duration, position string id, employer string id
+//   string index slot, 8 bytes: arena address of the string
+//   string arena: length, UTF-8 bytes; every distinct string is stored once
+// Jobs of row r are persons[r].firstJob until persons[r + 1].firstJob. Rows are longs, so the store is
+// limited by memory, not by array sizes. Pages are released when the store becomes unreachable.
+//
+// Records are read through reusable flyweight views with the getters of Person, JobHistoryEntry and
+// Employee, so the lambdas written for those classes compile against the views unchanged.
+// A view is only valid until it is moved to the next row: copy what must be kept, e.g. with toPerson().
+public class OffHeapEmployeeStore implements Iterable<OffHeapEmployeeStore.EmployeeView> {
+    private static final int PAGE_BYTES = 1 << 24;
+
+    private static final int PERSON_SLOT = 20;
+    private static final int FIRST_NAME = 0;
+    private static final int LAST_NAME = 4;
+    private static final int AGE = 8;
+    private static final int FIRST_JOB = 12;
+
+    private static final int JOB_SLOT = 12;
+    private static final int DURATION = 0;
+    private static final int POSITION = 4;
+    private static final int EMPLOYER = 8;
+
+    private static final int STRING_SLOT = 8;
+
+    private final Pages persons;
+    private final Pages jobs;
+    private final Pages strings;
+    private final Arena arena;
+
+    private OffHeapEmployeeStore(Builder builder) {
+        this.persons = builder.persons;
+        this.jobs = builder.jobs;
+        this.strings = builder.strings;
+        this.arena = builder.arena;
+    }
+
+    public static OffHeapEmployeeStore of(Iterable<Employee> employees) {
+        final Builder builder = new Builder();
+        employees.forEach(builder::add);
+        return builder.build();
+    }
+
+    public long size() {
+        return persons.size();
+    }
+
+    public long jobCount() {
+        return jobs.size();
+    }
+
+    // off-heap bytes in use, including the unused tails of the last pages
+    public long allocatedBytes() {
+        return persons.allocatedBytes() + jobs.allocatedBytes() + strings.allocatedBytes() + arena.allocatedBytes();
+    }
+
+    public EmployeeView view(long row) {
+        return new EmployeeView().moveTo(row);
+    }
+
+    // One view is reused for all rows
+    @Override
+    public void forEach(Consumer<? super EmployeeView> action) {
+        final EmployeeView view = new EmployeeView();
+        for (long row = 0, size = size(); row < size; row++) {
+            action.accept(view.moveTo(row));
+        }
+    }
+
+    // Every iterator has its own view, which is reused for all rows of that iterator
+    @Override
+    public Iterator<EmployeeView> iterator() {
+        return new Iterator<EmployeeView>() {
+            private final EmployeeView view = new EmployeeView();
+            private long row;
+
+            @Override
+            public boolean hasNext() {
+                return row < size();
+            }
+
+            @Override
+            public EmployeeView next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return view.moveTo(row++);
+            }
+        };
+    }
+
+    public List<Employee> toList() {
+        final List<Employee> result = new ArrayList<>();
+        forEach(e -> result.add(e.toEmployee()));
+        return result;
+    }
+
+    // Predicates comparing the stored UTF-8 bytes, so no String is created per row
+
+    public Predicate<PersonView> firstNameIs(String firstName) {
+        final byte[] bytes = utf8(firstName);
+        return p -> p.stringEquals(persons.getInt(p.row, FIRST_NAME), bytes);
+    }
+
+    public Predicate<PersonView> lastNameIs(String lastName) {
+        final byte[] bytes = utf8(lastName);
+        return p -> p.stringEquals(persons.getInt(p.row, LAST_NAME), bytes);
+    }
+
+    public Predicate<JobView> positionIs(String position) {
+        final byte[] bytes = utf8(position);
+        return j -> j.stringEquals(jobs.getInt(j.job, POSITION), bytes);
+    }
+
+    public Predicate<JobView> employerIs(String employer) {
+        final byte[] bytes = utf8(employer);
+        return j -> j.stringEquals(jobs.getInt(j.job, EMPLOYER), bytes);
+    }
+
+    private long firstJob(long row) {
+        return persons.getLong(row, FIRST_JOB);
+    }
+
+    private long jobEnd(long row) {
+        return row + 1 < persons.size() ? firstJob(row + 1) : jobs.size();
+    }
+
+    private long stringAddress(int id) {
+        return strings.getLong(id, 0);
+    }
+
+    private static byte[] utf8(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private abstract class View {
+        private byte[] scratch = new byte[32];
+
+        protected String string(int id) {
+            final long address = stringAddress(id);
+            final int length = arena.length(address);
+            if (scratch.length < length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            arena.read(address, scratch, length);
+            return new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+
+        // compares the stored bytes, no String is created
+        protected boolean stringEquals(int id, byte[] utf8) {
+            return arena.equalTo(stringAddress(id), utf8);
+        }
+    }
+
+    public class PersonView extends View {
+        private long row;
+
+        private PersonView() {
+        }
+
+        private PersonView moveTo(long row) {
+            this.row = row;
+            return this;
+        }
+
+        public long getRow() {
+            return row;
+        }
+
+        public String getFirstName() {
+            return string(persons.getInt(row, FIRST_NAME));
+        }
+
+        public String getLastName() {
+            return string(persons.getInt(row, LAST_NAME));
+        }
+
+        public int getAge() {
+            return persons.getInt(row, AGE);
+        }
+
+        public Person toPerson() {
+            return new Person(getFirstName(), getLastName(), getAge());
+        }
+
+        @Override
+        public String toString() {
+            return "PersonView@" + row + toPerson();
+        }
+    }
+
+    public class JobView extends View {
+        private long job;
+
+        private JobView() {
+        }
+
+        private JobView moveTo(long job) {
+            this.job = job;
+            return this;
+        }
+
+        public int getDuration() {
+            return jobs.getInt(job, DURATION);
+        }
+
+        public String getPosition() {
+            return string(jobs.getInt(job, POSITION));
+        }
+
+        public String getEmployer() {
+            return string(jobs.getInt(job, EMPLOYER));
+        }
+
+        public JobHistoryEntry toJobHistoryEntry() {
+            return new JobHistoryEntry(getDuration(), getPosition(), getEmployer());
+        }
+
+        @Override
+        public String toString() {
+            return "JobView@" + job + toJobHistoryEntry();
+        }
+    }
+
+    public class EmployeeView {
+        private final PersonView person = new PersonView();
+        private final JobView job = new JobView();
+        private long row;
+
+        private EmployeeView() {
+        }
+
+        public EmployeeView moveTo(long row) {
+            if (row < 0 || row >= size()) {
+                throw new IndexOutOfBoundsException("row " + row + ", size " + size());
+            }
+            this.row = row;
+            person.moveTo(row);
+            return this;
+        }
+
+        public long getRow() {
+            return row;
+        }
+
+        public PersonView getPerson() {
+            return person;
+        }
+
+        public int getJobCount() {
+            return (int) (jobEnd(row) - firstJob(row));
+        }
+
+        // the same JobView is passed for every job
+        public boolean anyJob(Predicate<? super JobView> condition) {
+            for (long j = firstJob(row), end = jobEnd(row); j < end; j++) {
+                if (condition.test(job.moveTo(j))) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        public void forEachJob(Consumer<? super JobView> action) {
+            for (long j = firstJob(row), end = jobEnd(row); j < end; j++) {
+                action.accept(job.moveTo(j));
+            }
+        }
+
+        public Employee toEmployee() {
+            final List<JobHistoryEntry> history = new ArrayList<>(getJobCount());
+            forEachJob(j -> history.add(j.toJobHistoryEntry()));
+            return new Employee(person.toPerson(), history);
+        }
+
+        @Override
+        public String toString() {
+            return "EmployeeView@" + row + toEmployee();
+        }
+    }
+
+    // Fixed-width slots in pages of PAGE_BYTES
+    private static class Pages {
+        private final int slotSize;
+        private final int slotsPerPage;
+        private final List<ByteBuffer> pages = new ArrayList<>();
+        private long size;
+
+        private Pages(int slotSize) {
+            this.slotSize = slotSize;
+            this.slotsPerPage = PAGE_BYTES / slotSize;
+        }
+
+        private long size() {
+            return size;
+        }
+
+        private long allocatedBytes() {
+            return (long) pages.size() * slotsPerPage * slotSize;
+        }
+
+        // index of the new slot
+        private long append() {
+            if (size == (long) pages.size() * slotsPerPage) {
+                pages.add(ByteBuffer.allocateDirect(slotsPerPage * slotSize).order(ByteOrder.nativeOrder()));
+            }
+            return size++;
+        }
+
+        private ByteBuffer page(long slot) {
+            return pages.get((int) (slot / slotsPerPage));
+        }
+
+        private int offset(long slot, int field) {
+            return (int) (slot % slotsPerPage) * slotSize + field;
+        }
+
+        private int getInt(long slot, int field) {
+            return page(slot).getInt(offset(slot, field));
+        }
+
+        private long getLong(long slot, int field) {
+            return page(slot).getLong(offset(slot, field));
+        }
+
+        private void putInt(long slot, int field, int value) {
+            page(slot).putInt(offset(slot, field), value);
+        }
+
+        private void putLong(long slot, int field, long value) {
+            page(slot).putLong(offset(slot, field), value);
+        }
+    }
+
+    // Variable length strings, a string never crosses a page boundary
+    private static class Arena {
+        private final List<ByteBuffer> pages = new ArrayList<>();
+        private int position = PAGE_BYTES;
+
+        private long allocatedBytes() {
+            return (long) pages.size() * PAGE_BYTES;
+        }
+
+        // address of the stored string
+        private long append(byte[] bytes) {
+            final int required = 4 + bytes.length;
+            if (required > PAGE_BYTES) {
+                throw new IllegalArgumentException("string of " + bytes.length + " bytes is longer than a page");
+            }
+            if (position + required > PAGE_BYTES) {
+                pages.add(ByteBuffer.allocateDirect(PAGE_BYTES).order(ByteOrder.nativeOrder()));
+                position = 0;
+            }
+
+            final ByteBuffer page = pages.get(pages.size() - 1);
+            final long address = (long) (pages.size() - 1) * PAGE_BYTES + position;
+            page.putInt(position, bytes.length);
+            for (int i = 0; i < bytes.length; i++) {
+                page.put(position + 4 + i, bytes[i]);
+            }
+            position += required;
+            return address;
+        }
+
+        private int length(long address) {
+            return pages.get((int) (address / PAGE_BYTES)).getInt((int) (address % PAGE_BYTES));
+        }
+
+        private void read(long address, byte[] target, int length) {
+            final ByteBuffer page = pages.get((int) (address / PAGE_BYTES));
+            final int start = (int) (address % PAGE_BYTES) + 4;
+            for (int i = 0; i < length; i++) {
+                target[i] = page.get(start + i);
+            }
+        }
+
+        private boolean equalTo(long address, byte[] bytes) {
+            if (length(address) != bytes.length) {
+                return false;
+            }
+            final ByteBuffer page = pages.get((int) (address / PAGE_BYTES));
+            final int start = (int) (address % PAGE_BYTES) + 4;
+            for (int i = 0; i < bytes.length; i++) {
+                if (page.get(start + i) != bytes[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    // Writes straight into the pages. Only the ids of distinct strings are kept on the heap while building.
+    public static class Builder {
+        private final Pages persons = new Pages(PERSON_SLOT);
+        private final Pages jobs = new Pages(JOB_SLOT);
+        private final Pages strings = new Pages(STRING_SLOT);
+        private final Arena arena = new Arena();
+        private Map<String, Integer> ids = new HashMap<>();
+
+        public Builder add(Employee employee) {
+            final Person person = employee.getPerson();
+            addPerson(person.getFirstName(), person.getLastName(), person.getAge());
+            employee.forEachJob(j -> addJob(j.getDuration(), j.getPosition(), j.getEmployer()));
+            return this;
+        }
+
+        // jobs added after this call belong to this person
+        public Builder addPerson(String firstName, String lastName, int age) {
+            checkNotBuilt();
+            final long row = persons.append();
+            persons.putInt(row, FIRST_NAME, id(firstName));
+            persons.putInt(row, LAST_NAME, id(lastName));
+            persons.putInt(row, AGE, age);
+            persons.putLong(row, FIRST_JOB, jobs.size());
+            return this;
+        }
+
+        public Builder addJob(int duration, String position, String employer) {
+            checkNotBuilt();
+            if (persons.size() == 0) {
+                throw new IllegalStateException("addPerson must be called before addJob");
+            }
+            final long job = jobs.append();
+            jobs.putInt(job, DURATION, duration);
+            jobs.putInt(job, POSITION, id(position));
+            jobs.putInt(job, EMPLOYER, id(employer));
+            return this;
+        }
+
+        // the builder can not be used after build, the store owns the pages
+        public OffHeapEmployeeStore build() {
+            checkNotBuilt();
+            ids = null;
+            return new OffHeapEmployeeStore(this);
+        }
+
+        private int id(String value) {
+            if (value == null) {
+                throw new NullPointerException("null strings are not supported");
+            }
+            Integer id = ids.get(value);
+            if (id == null) {
+                if (strings.size() == Integer.MAX_VALUE) {
+                    throw new IllegalStateException("too many distinct strings");
+                }
+                id = (int) strings.append();
+                strings.putLong(id, 0, arena.append(utf8(value)));
+                ids.put(value, id);
+            }
+            return id;
+        }
+
+        private void checkNotBuilt() {
+            if (ids == null) {
+                throw new IllegalStateException("already built");
+            }
+        }
+    }
+}
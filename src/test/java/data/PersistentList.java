@@ -0,0 +1,247 @@
+package data;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.function.Consumer;
+
+// Immutable list as a 32-way trie of leaf arrays plus a tail array (as Clojure's PersistentVector):
+// plus and with copy one path of at most log32(size) arrays and share everything else with the source.
+// List mutators throw UnsupportedOperationException, as on Collections.unmodifiableList.
+public final class PersistentList<E> extends AbstractList<E> implements RandomAccess {
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+    private static final Object[] EMPTY_NODE = new Object[WIDTH];
+    private static final PersistentList<?> EMPTY = new PersistentList<>(0, BITS, EMPTY_NODE, new Object[0]);
+
+    private final int size;
+    // bits of the index consumed above the leaves
+    private final int shift;
+    private final Object[] root;
+    // last 1..32 elements, not in the trie yet; may have unused slots after them (see Builder)
+    private final Object[] tail;
+
+    private PersistentList(int size, int shift, Object[] root, Object[] tail) {
+        this.size = size;
+        this.shift = shift;
+        this.root = root;
+        this.tail = tail;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <E> PersistentList<E> empty() {
+        return (PersistentList<E>) EMPTY;
+    }
+
+    // the same list if it is already persistent, otherwise a copy built level by level in O(n)
+    @SuppressWarnings("unchecked")
+    public static <E> PersistentList<E> copyOf(Collection<? extends E> elements) {
+        if (elements instanceof PersistentList) {
+            return (PersistentList<E>) elements;
+        }
+        Object[] all = elements.toArray();
+        if (all.getClass() != Object[].class) {
+            // Arrays.asList(...).toArray() keeps the component type before Java 9
+            all = Arrays.copyOf(all, all.length, Object[].class);
+        }
+        if (all.length == 0) {
+            return empty();
+        }
+
+        final int tailOffset = tailOffset(all.length);
+        final Object[] tail = tailOffset == 0 ? all : Arrays.copyOfRange(all, tailOffset, all.length);
+        final List<Object[]> leaves = new ArrayList<>();
+        for (int i = 0; i < tailOffset; i += WIDTH) {
+            leaves.add(Arrays.copyOfRange(all, i, i + WIDTH));
+        }
+        return of(all.length, leaves, tail);
+    }
+
+    // full leaves bottom up, tail holds the rest
+    private static <E> PersistentList<E> of(int size, List<Object[]> leaves, Object[] tail) {
+        List<Object[]> nodes = leaves;
+        int shift = BITS;
+        while (nodes.size() > WIDTH) {
+            final List<Object[]> parents = new ArrayList<>();
+            for (int i = 0; i < nodes.size(); i += WIDTH) {
+                parents.add(node(nodes.subList(i, Math.min(i + WIDTH, nodes.size()))));
+            }
+            nodes = parents;
+            shift += BITS;
+        }
+        return new PersistentList<>(size, shift, node(nodes), tail);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return (E) leaf(index)[index & MASK];
+    }
+
+    // appended copy, O(log n)
+    public PersistentList<E> plus(E element) {
+        final int inTail = size - tailOffset(size);
+        if (inTail < WIDTH) {
+            final Object[] newTail = Arrays.copyOf(tail, inTail + 1);
+            newTail[inTail] = element;
+            return new PersistentList<>(size + 1, shift, root, newTail);
+        }
+
+        // the tail is full, it becomes a leaf of the trie
+        final Object[] newRoot;
+        int newShift = shift;
+        if ((size >>> BITS) > (1 << shift)) {
+            newRoot = new Object[WIDTH];
+            newRoot[0] = root;
+            newRoot[1] = newPath(shift, tail);
+            newShift += BITS;
+        } else {
+            newRoot = pushTail(shift, root, tail);
+        }
+        return new PersistentList<>(size + 1, newShift, newRoot, new Object[]{element});
+    }
+
+    // copy with the element at index replaced, O(log n)
+    public PersistentList<E> with(int index, E element) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        if (index >= tailOffset(size)) {
+            final Object[] newTail = tail.clone();
+            newTail[index & MASK] = element;
+            return new PersistentList<>(size, shift, root, newTail);
+        }
+        return new PersistentList<>(size, shift, assoc(shift, root, index, element), tail);
+    }
+
+    // leaf by leaf, without a trie walk per element
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            private int index;
+            private Object[] leaf;
+
+            @Override
+            public boolean hasNext() {
+                return index < size;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public E next() {
+                if (index >= size) {
+                    throw new NoSuchElementException();
+                }
+                if ((index & MASK) == 0) {
+                    leaf = leaf(index);
+                }
+                return (E) leaf[index++ & MASK];
+            }
+        };
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void forEach(Consumer<? super E> action) {
+        for (int i = 0; i < size; i += WIDTH) {
+            final Object[] leaf = leaf(i);
+            for (int j = 0, end = Math.min(WIDTH, size - i); j < end; j++) {
+                action.accept((E) leaf[j]);
+            }
+        }
+    }
+
+    // Appends in place, for a list that is built once (as a parsed record): build() hands the arrays
+    // over without copying them, so a builder is used for one list only
+    public static final class Builder<E> {
+        private final List<Object[]> leaves = new ArrayList<>();
+        private Object[] tail = new Object[4];
+        private int inTail;
+
+        public Builder<E> add(E element) {
+            if (inTail == WIDTH) {
+                leaves.add(tail);
+                tail = new Object[WIDTH];
+                inTail = 0;
+            } else if (inTail == tail.length) {
+                tail = Arrays.copyOf(tail, Math.min(WIDTH, inTail * 2));
+            }
+            tail[inTail++] = element;
+            return this;
+        }
+
+        public PersistentList<E> build() {
+            final int size = leaves.size() * WIDTH + inTail;
+            return size == 0 ? PersistentList.<E>empty() : of(size, leaves, tail);
+        }
+    }
+
+    private static int tailOffset(int size) {
+        return size < WIDTH ? 0 : ((size - 1) >>> BITS) << BITS;
+    }
+
+    private Object[] leaf(int index) {
+        if (index >= tailOffset(size)) {
+            return tail;
+        }
+        Object[] node = root;
+        for (int level = shift; level > 0; level -= BITS) {
+            node = (Object[]) node[(index >>> level) & MASK];
+        }
+        return node;
+    }
+
+    private Object[] pushTail(int level, Object[] parent, Object[] leaf) {
+        final int child = ((size - 1) >>> level) & MASK;
+        final Object[] result = parent.clone();
+        if (level == BITS) {
+            result[child] = leaf;
+        } else {
+            final Object[] node = (Object[]) parent[child];
+            result[child] = node == null ? newPath(level - BITS, leaf) : pushTail(level - BITS, node, leaf);
+        }
+        return result;
+    }
+
+    private static Object[] newPath(int level, Object[] leaf) {
+        if (level == 0) {
+            return leaf;
+        }
+        final Object[] node = new Object[WIDTH];
+        node[0] = newPath(level - BITS, leaf);
+        return node;
+    }
+
+    private static Object[] assoc(int level, Object[] node, int index, Object element) {
+        final Object[] result = node.clone();
+        if (level == 0) {
+            result[index & MASK] = element;
+        } else {
+            final int child = (index >>> level) & MASK;
+            result[child] = assoc(level - BITS, (Object[]) node[child], index, element);
+        }
+        return result;
+    }
+
+    private static Object[] node(List<Object[]> children) {
+        final Object[] node = new Object[WIDTH];
+        for (int i = 0; i < children.size(); i++) {
+            node[i] = children.get(i);
+        }
+        return node;
+    }
+}
@@ -1,18 +1,21 @@
 package data;
 
-import org.apache.commons.lang3.builder.EqualsBuilder;
-import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 
+import java.util.Objects;
+
 public class Person {
     private final String firstName;
     private final String lastName;
     private final int age;
+    private final int hash;
 
+    // names are not dictionary-encoded: they are high-cardinality, a shared dictionary would only grow
     public Person(String firstName, String lastName, int age) {
         this.firstName = firstName;
         this.lastName = lastName;
         this.age = age;
+        this.hash = 31 * (31 * Objects.hashCode(firstName) + Objects.hashCode(lastName)) + age;
     }
 
     public String getFirstName() {
@@ -64,19 +67,14 @@ public class Person {
 
         Person person = (Person) o;
 
-        return new EqualsBuilder()
-                .append(age, person.age)
-                .append(firstName, person.firstName)
-                .append(lastName, person.lastName)
-                .isEquals();
+        return age == person.age
+                && hash == person.hash
+                && Objects.equals(firstName, person.firstName)
+                && Objects.equals(lastName, person.lastName);
     }
 
     @Override
     public int hashCode() {
-        return new HashCodeBuilder(17, 37)
-                .append(firstName)
-                .append(lastName)
-                .append(age)
-                .toHashCode();
+        return hash;
     }
 }
@@ -0,0 +1,259 @@
+package data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Sorts persons by several keys, same order as the comparing(...).thenComparing(...) chain of the keys.
+// Keys are extracted once per person (Schwartzian transform). Name keys are sorted with
+// 3-way radix quicksort (MSD), char by char. An age key and fully equal names are sorted by a
+// comparator compiled from the remaining keys, which compares ages as ints.
+// Stable: persons with equal keys keep their input order. Names must not be null.
+public class PersonSorter {
+    public enum Key {
+        LAST_NAME, FIRST_NAME, AGE
+    }
+
+    private static final int INSERTION_THRESHOLD = 16;
+    private static final int PARALLEL_THRESHOLD = 1 << 13;
+
+    private final Key[] keys;
+    // tails[k] compares keys k, k + 1, ... and the input index
+    private final Comparator<Row>[] tails;
+    // null for sequential sort
+    private final ForkJoinPool pool;
+
+    private PersonSorter(Key[] keys, ForkJoinPool pool) {
+        this.keys = keys;
+        this.tails = compile(keys);
+        this.pool = pool;
+    }
+
+    public static PersonSorter by(Key... keys) {
+        if (keys.length == 0) {
+            throw new IllegalArgumentException("no sort keys");
+        }
+        return new PersonSorter(keys.clone(), null);
+    }
+
+    public PersonSorter parallel() {
+        return parallel(ForkJoinPool.commonPool());
+    }
+
+    public PersonSorter parallel(ForkJoinPool pool) {
+        return new PersonSorter(keys, pool);
+    }
+
+    public void sort(Person[] persons) {
+        final Row[] rows = new Row[persons.length];
+        if (pool == null || persons.length < PARALLEL_THRESHOLD) {
+            for (int i = 0; i < rows.length; i++) {
+                rows[i] = new Row(persons[i], i, keys);
+            }
+            new MsdSort(rows, 0, rows.length, 0, 0).compute();
+        } else {
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    Arrays.parallelSetAll(rows, i -> new Row(persons[i], i, keys));
+                    new MsdSort(rows, 0, rows.length, 0, 0).compute();
+                }
+            });
+        }
+
+        for (int i = 0; i < rows.length; i++) {
+            persons[i] = rows[i].person;
+        }
+    }
+
+    public List<Person> sort(Collection<Person> persons) {
+        final Person[] result = persons.toArray(new Person[persons.size()]);
+        sort(result);
+        return Arrays.asList(result);
+    }
+
+    private static class Row {
+        private final Person person;
+        private final int index;
+        // names[k] for the name key k, null for an age key
+        private final String[] names;
+        private final int age;
+
+        private Row(Person person, int index, Key[] keys) {
+            this.person = person;
+            this.index = index;
+            this.names = new String[keys.length];
+            for (int k = 0; k < keys.length; k++) {
+                if (keys[k] == Key.LAST_NAME) {
+                    names[k] = person.getLastName();
+                } else if (keys[k] == Key.FIRST_NAME) {
+                    names[k] = person.getFirstName();
+                }
+            }
+            this.age = person.getAge();
+        }
+
+        // -1 after the end, so shorter strings go first
+        private int charAt(int key, int depth) {
+            final String name = names[key];
+            return depth < name.length() ? name.charAt(depth) : -1;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Comparator<Row>[] compile(Key[] keys) {
+        final Comparator<Row>[] tails = (Comparator<Row>[]) new Comparator<?>[keys.length + 1];
+        tails[keys.length] = (a, b) -> Integer.compare(a.index, b.index);
+        for (int k = keys.length - 1; k >= 0; k--) {
+            final int key = k;
+            final Comparator<Row> next = tails[k + 1];
+            if (keys[k] == Key.AGE) {
+                tails[k] = (a, b) -> {
+                    final int result = Integer.compare(a.age, b.age);
+                    return result != 0 ? result : next.compare(a, b);
+                };
+            } else {
+                tails[k] = (a, b) -> {
+                    final int result = a.names[key].compareTo(b.names[key]);
+                    return result != 0 ? result : next.compare(a, b);
+                };
+            }
+        }
+        return tails;
+    }
+
+    // rows[from, to) are equal in keys before key and in the first depth chars of key
+    private class MsdSort extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Row[] rows;
+        private final int from;
+        private final int to;
+        private final int key;
+        private final int depth;
+
+        private MsdSort(Row[] rows, int from, int to, int key, int depth) {
+            this.rows = rows;
+            this.from = from;
+            this.to = to;
+            this.key = key;
+            this.depth = depth;
+        }
+
+        // loops on the largest partition, so the stack holds O(log n) frames
+        @Override
+        protected void compute() {
+            // only ranges of PARALLEL_THRESHOLD and more fork
+            final List<MsdSort> forked = pool != null && to - from >= PARALLEL_THRESHOLD ? new ArrayList<>() : null;
+            MsdSort task = this;
+            while (task != null) {
+                task = task.partition(forked);
+            }
+            if (forked != null) {
+                for (MsdSort part : forked) {
+                    part.join();
+                }
+            }
+        }
+
+        // sorts or forks the smaller partitions, returns the largest one, or null when done
+        private MsdSort partition(List<MsdSort> forked) {
+            if (to - from < 2) {
+                return null;
+            }
+            if (key == keys.length) {
+                // fully equal keys, restore the input order
+                Arrays.sort(rows, from, to, tails[key]);
+                return null;
+            }
+            if (keys[key] == Key.AGE) {
+                if (pool != null && to - from >= PARALLEL_THRESHOLD) {
+                    Arrays.parallelSort(rows, from, to, tails[key]);
+                } else {
+                    Arrays.sort(rows, from, to, tails[key]);
+                }
+                return null;
+            }
+            if (to - from < INSERTION_THRESHOLD) {
+                insertionSort();
+                return null;
+            }
+
+            swap(from, from + (to - from) / 2);
+            final int pivot = rows[from].charAt(key, depth);
+            int lt = from;
+            int gt = to - 1;
+            int i = from + 1;
+            while (i <= gt) {
+                final int c = rows[i].charAt(key, depth);
+                if (c < pivot) {
+                    swap(lt++, i++);
+                } else if (c > pivot) {
+                    swap(i, gt--);
+                } else {
+                    i++;
+                }
+            }
+
+            // [from, lt) < pivot, [lt, gt] == pivot, (gt, to) > pivot
+            final MsdSort[] parts = {
+                    new MsdSort(rows, from, lt, key, depth),
+                    pivot < 0
+                            ? new MsdSort(rows, lt, gt + 1, key + 1, 0)
+                            : new MsdSort(rows, lt, gt + 1, key, depth + 1),
+                    new MsdSort(rows, gt + 1, to, key, depth)
+            };
+            MsdSort largest = parts[0];
+            for (MsdSort part : parts) {
+                if (part.to - part.from > largest.to - largest.from) {
+                    largest = part;
+                }
+            }
+            for (MsdSort part : parts) {
+                if (part == largest) {
+                    continue;
+                }
+                if (forked != null && part.to - part.from >= PARALLEL_THRESHOLD) {
+                    part.fork();
+                    forked.add(part);
+                } else {
+                    part.compute();
+                }
+            }
+            return largest;
+        }
+
+        private void insertionSort() {
+            for (int i = from + 1; i < to; i++) {
+                for (int j = i; j > from && compare(rows[j], rows[j - 1]) < 0; j--) {
+                    swap(j, j - 1);
+                }
+            }
+        }
+
+        // the first depth chars are known to be equal
+        private int compare(Row a, Row b) {
+            final String s = a.names[key];
+            final String t = b.names[key];
+            final int length = Math.min(s.length(), t.length());
+            for (int i = depth; i < length; i++) {
+                final int result = s.charAt(i) - t.charAt(i);
+                if (result != 0) {
+                    return result;
+                }
+            }
+            final int result = s.length() - t.length();
+            return result != 0 ? result : tails[key + 1].compare(a, b);
+        }
+
+        private void swap(int i, int j) {
+            final Row row = rows[i];
+            rows[i] = rows[j];
+            rows[j] = row;
+        }
+    }
+}
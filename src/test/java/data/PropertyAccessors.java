@@ -0,0 +1,217 @@
+package data;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+// Property name -> getter as a Function, generated with LambdaMetafactory once per (class, path),
+// so it runs like a hand-written method reference. Paths may be nested: "person.firstName".
+// The JIT inlines an accessor only where its call site sees few accessor classes: hold the ones used
+// in a hot loop in static final fields and call them from their own site. A nested path joins its
+// parts with Function.andThen, whose inner call is shared by all nested paths and goes megamorphic
+// once several are in use; Expressions.Field shares one site for all properties in the same way.
+// A getter that no public class declares (overridden in a package-private subclass, say) cannot be
+// linked from this package and is called through reflection instead.
+public class PropertyAccessors {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private static final ConcurrentMap<Class<?>, ConcurrentMap<String, Function<?, ?>>> FUNCTIONS = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<Class<?>, ConcurrentMap<String, ToIntFunction<?>>> INT_FUNCTIONS = new ConcurrentHashMap<>();
+
+    private PropertyAccessors() {
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> Function<T, Object> function(Class<T> type, String path) {
+        final ConcurrentMap<String, Function<?, ?>> functions = FUNCTIONS.computeIfAbsent(type, t -> new ConcurrentHashMap<>());
+        Function<?, ?> function = functions.get(path);
+        if (function == null) {
+            checkPath(type, path);
+            // not computeIfAbsent: nested paths create accessors of other paths
+            function = createFunction(type, path);
+            final Function<?, ?> existing = functions.putIfAbsent(path, function);
+            if (existing != null) {
+                function = existing;
+            }
+        }
+
+        return (Function<T, Object>) function;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T, R> Function<T, R> function(Class<T> type, String path, Class<R> propertyType) {
+        final Class<?> actual = wrap(propertyType(type, path));
+        if (!propertyType.isAssignableFrom(actual)) {
+            throw new IllegalArgumentException(type.getSimpleName() + "." + path + " is " + actual.getSimpleName()
+                    + ", not " + propertyType.getSimpleName());
+        }
+
+        return (Function<T, R>) function(type, path);
+    }
+
+    public static <T> Function<T, String> stringProperty(Class<T> type, String path) {
+        return function(type, path, String.class);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> ToIntFunction<T> intProperty(Class<T> type, String path) {
+        final ConcurrentMap<String, ToIntFunction<?>> functions = INT_FUNCTIONS.computeIfAbsent(type, t -> new ConcurrentHashMap<>());
+        ToIntFunction<?> function = functions.get(path);
+        if (function == null) {
+            checkPath(type, path);
+            function = createIntFunction(type, path);
+            final ToIntFunction<?> existing = functions.putIfAbsent(path, function);
+            if (existing != null) {
+                function = existing;
+            }
+        }
+
+        return (ToIntFunction<T>) function;
+    }
+
+    public static Class<?> propertyType(Class<?> type, String path) {
+        checkPath(type, path);
+        Class<?> current = type;
+        for (String property : path.split("\\.")) {
+            current = getter(current, property).getReturnType();
+        }
+        return current;
+    }
+
+    // "", ".age" and "person..age" have an empty property name, split() alone would drop trailing ones
+    private static void checkPath(Class<?> type, String path) {
+        if (path.isEmpty() || path.startsWith(".") || path.endsWith(".") || path.contains("..")) {
+            throw new IllegalArgumentException(type.getSimpleName() + " path \"" + path + "\" has an empty property name");
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Function<T, ?> createFunction(Class<T> type, String path) {
+        final int dot = path.lastIndexOf('.');
+        if (dot >= 0) {
+            final Function<T, Object> owner = function(type, path.substring(0, dot));
+            final Class<?> ownerType = propertyType(type, path.substring(0, dot));
+            final Function<Object, Object> property = function((Class<Object>) ownerType, path.substring(dot + 1));
+            return owner.andThen(property);
+        }
+
+        final Method getter = getter(type, path);
+        final Method declared = publicDeclaration(type, getter.getName());
+        if (declared == null) {
+            return reflective(getter);
+        }
+        return (Function<T, ?>) metafactory(declared, "apply", Function.class,
+                MethodType.methodType(Object.class, Object.class),
+                MethodType.methodType(wrap(declared.getReturnType()), declared.getDeclaringClass()));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> ToIntFunction<T> createIntFunction(Class<T> type, String path) {
+        final int dot = path.lastIndexOf('.');
+        if (dot >= 0) {
+            final Function<T, Object> owner = function(type, path.substring(0, dot));
+            final ToIntFunction<Object> property = intProperty((Class<Object>) propertyType(type, path.substring(0, dot)), path.substring(dot + 1));
+            return t -> property.applyAsInt(owner.apply(t));
+        }
+
+        final Method getter = getter(type, path);
+        if (getter.getReturnType() != int.class) {
+            throw new IllegalArgumentException(type.getSimpleName() + "." + path + " is not an int property");
+        }
+        final Method declared = publicDeclaration(type, getter.getName());
+        if (declared == null) {
+            final Function<T, ?> function = reflective(getter);
+            return t -> (Integer) function.apply(t);
+        }
+        return (ToIntFunction<T>) metafactory(declared, "applyAsInt", ToIntFunction.class,
+                MethodType.methodType(int.class, Object.class),
+                MethodType.methodType(int.class, declared.getDeclaringClass()));
+    }
+
+    private static Object metafactory(Method getter, String samName, Class<?> samType,
+                                      MethodType samMethodType, MethodType instantiatedMethodType) {
+        try {
+            final MethodHandle handle = LOOKUP.unreflect(getter);
+            final CallSite site = LambdaMetafactory.metafactory(LOOKUP, samName,
+                    MethodType.methodType(samType), samMethodType, handle, instantiatedMethodType);
+            return site.getTarget().invoke();
+        } catch (Throwable e) {
+            throw new IllegalStateException("cannot create accessor for " + getter, e);
+        }
+    }
+
+    // the getter as a public class or interface declares it, null if none does
+    private static Method publicDeclaration(Class<?> type, String name) {
+        if (type == null) {
+            return null;
+        }
+        if (Modifier.isPublic(type.getModifiers())) {
+            try {
+                final Method method = type.getDeclaredMethod(name);
+                if (Modifier.isPublic(method.getModifiers())) {
+                    return method;
+                }
+            } catch (NoSuchMethodException e) {
+                // inherited, look further up
+            }
+        }
+        Method found = publicDeclaration(type.getSuperclass(), name);
+        for (Class<?> i : type.getInterfaces()) {
+            if (found == null) {
+                found = publicDeclaration(i, name);
+            }
+        }
+        return found;
+    }
+
+    private static <T> Function<T, ?> reflective(Method getter) {
+        try {
+            getter.setAccessible(true);
+        } catch (RuntimeException e) {
+            throw new IllegalStateException("cannot access " + getter, e);
+        }
+        return t -> {
+            try {
+                return getter.invoke(t);
+            } catch (InvocationTargetException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IllegalStateException(e.getCause());
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("cannot access " + getter, e);
+            }
+        };
+    }
+
+    private static Method getter(Class<?> type, String property) {
+        final String suffix = Character.toUpperCase(property.charAt(0)) + property.substring(1);
+        for (String prefix : new String[]{"get", "is"}) {
+            try {
+                final Method method = type.getMethod(prefix + suffix);
+                if (method.getReturnType() != void.class && !Modifier.isStatic(method.getModifiers())) {
+                    return method;
+                }
+            } catch (NoSuchMethodException e) {
+                // try the next prefix
+            }
+        }
+        throw new IllegalArgumentException(type.getSimpleName() + " has no property " + property);
+    }
+
+    static Class<?> wrap(Class<?> type) {
+        if (!type.isPrimitive()) {
+            return type;
+        }
+        return MethodType.methodType(type).wrap().returnType();
+    }
+}
@@ -0,0 +1,119 @@
+package data;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+
+// String <-> int code, codes are dense and never reused, so the dictionary only grows:
+// global() is meant for low-cardinality values (positions, employers), other values need their own instance
+// that is dropped with its owner (as in EmployeeTable). null is encoded as -1.
+public class StringDictionary {
+    private static final StringDictionary GLOBAL = new StringDictionary();
+
+    private final ConcurrentHashMap<String, Integer> codes = new ConcurrentHashMap<>();
+    private volatile String[] values = new String[64];
+    private int size;
+
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder savedBytes = new LongAdder();
+
+    public static StringDictionary global() {
+        return GLOBAL;
+    }
+
+    public int encode(String value) {
+        if (value == null) {
+            return -1;
+        }
+
+        final Integer code = codes.get(value);
+        if (code != null) {
+            duplicate(value, code);
+            return code;
+        }
+
+        return add(value);
+    }
+
+    private synchronized int add(String value) {
+        final Integer code = codes.get(value);
+        if (code != null) {
+            duplicate(value, code);
+            return code;
+        }
+
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size] = value;
+        codes.put(value, size);
+        return size++;
+    }
+
+    private void duplicate(String value, int code) {
+        duplicates.increment();
+        if (value != values[code]) {
+            savedBytes.add(estimateSize(value));
+        }
+    }
+
+    // String header + char[] header and chars, 8 byte aligned
+    private static long estimateSize(String value) {
+        return 24 + ((16 + 2L * value.length() + 7) & ~7L);
+    }
+
+    // canonical instance for the code
+    public String decode(int code) {
+        return code < 0 ? null : values[code];
+    }
+
+    // -1 if the value was never encoded
+    public int code(String value) {
+        if (value == null) {
+            return -1;
+        }
+
+        final Integer code = codes.get(value);
+        return code == null ? -1 : code;
+    }
+
+    public int size() {
+        return codes.size();
+    }
+
+    public long duplicates() {
+        return duplicates.sum();
+    }
+
+    // estimated bytes of duplicate String instances replaced by the canonical ones
+    public long savedBytes() {
+        return savedBytes.sum();
+    }
+
+    // (T -> code, String) -> (T -> boolean), compares ints only; looks the value up without encoding it
+    public <T> Predicate<T> equalTo(ToIntFunction<T> code, String value) {
+        final int expected = code(value);
+        if (value == null || expected >= 0) {
+            return t -> code.applyAsInt(t) == expected;
+        }
+
+        // not encoded yet: no element seen so far matches, elements created later may
+        return t -> {
+            final int actual = code.applyAsInt(t);
+            return actual >= 0 && value.equals(decode(actual));
+        };
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("size", size())
+                .append("duplicates", duplicates())
+                .append("savedBytes", savedBytes())
+                .toString();
+    }
+}
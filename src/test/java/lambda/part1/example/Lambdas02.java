@@ -6,14 +6,18 @@ import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import data.Person;
+import data.PersonSorter;
 import org.junit.Test;
 
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 public class Lambdas02 {
 
@@ -67,4 +71,48 @@ public class Lambdas02 {
         assertEquals(personByLastName.get("lastName 2"), new Person("name 1", "lastName 2", 40));
     }
 
+    @Test
+    public void sortPersonsByKeys() {
+        final String[] names = {"", "a", "ab", "abc", "b", "ba", "lastName 1", "lastName 10", "lastName 2", "Ivanov", "\u0418\u0432\u0430\u043d\u043e\u0432"};
+        final Random random = new Random(1);
+        final Person[] persons = new Person[20_000];
+        for (int i = 0; i < persons.length; i++) {
+            persons[i] = new Person(names[random.nextInt(names.length)], names[random.nextInt(names.length)], random.nextInt(5));
+        }
+
+        final Person[] expected = persons.clone();
+        Arrays.sort(expected, Comparator.comparing(Person::getLastName)
+                .thenComparing(Person::getFirstName)
+                .thenComparingInt(Person::getAge));
+
+        final Person[] sorted = persons.clone();
+        PersonSorter.by(PersonSorter.Key.LAST_NAME, PersonSorter.Key.FIRST_NAME, PersonSorter.Key.AGE).sort(sorted);
+        assertSameOrder(expected, sorted);
+
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            final Person[] parallelSorted = persons.clone();
+            PersonSorter.by(PersonSorter.Key.LAST_NAME, PersonSorter.Key.FIRST_NAME, PersonSorter.Key.AGE)
+                    .parallel(pool)
+                    .sort(parallelSorted);
+            assertSameOrder(expected, parallelSorted);
+
+            // equal persons keep the input order
+            final Person[] expectedByAge = persons.clone();
+            Arrays.sort(expectedByAge, Comparator.comparingInt(Person::getAge).thenComparing(Person::getFirstName));
+            final Person[] byAge = persons.clone();
+            PersonSorter.by(PersonSorter.Key.AGE, PersonSorter.Key.FIRST_NAME).parallel(pool).sort(byAge);
+            assertSameOrder(expectedByAge, byAge);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void assertSameOrder(Person[] expected, Person[] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertSame(expected[i], actual[i]);
+        }
+    }
+
 }
@@ -1,12 +1,18 @@
 package lambda.part2.example;
 
 import com.sun.org.apache.xpath.internal.operations.Bool;
+import data.Employee;
+import data.Expressions;
+import data.JobHistoryEntry;
 import data.Person;
+import data.PropertyAccessors;
 import org.junit.Test;
 
+import java.util.Collections;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
 
 import static org.junit.Assert.assertEquals;
 
@@ -77,6 +83,78 @@ public class ArrowNotation {
         assertEquals(Boolean.TRUE, ageChecker.apply(person).test("33"));
     }
 
+    @Test
+    public void checkPropertyByName() {
+        // property names known at runtime only
+        final Function<Person, Predicate<String>> lastNameChecker =
+                propertyChecker2(PropertyAccessors.stringProperty(Person.class, "lastName"));
+        final ToIntFunction<Person> age = PropertyAccessors.intProperty(Person.class, "age");
+
+        final Person person = new Person("a", "b", 33);
+        assertEquals(Boolean.TRUE, lastNameChecker.apply(person).test("b"));
+        assertEquals(33, age.applyAsInt(person));
+        assertEquals(33, PropertyAccessors.function(Person.class, "age").apply(person));
+        assertEquals(true, PropertyAccessors.stringProperty(Person.class, "lastName")
+                == PropertyAccessors.stringProperty(Person.class, "lastName"));
+
+        final Employee employee = new Employee(person, Collections.singletonList(new JobHistoryEntry(1, "dev", "epam")));
+        assertEquals("a", PropertyAccessors.stringProperty(Employee.class, "person.firstName").apply(employee));
+        assertEquals(33, PropertyAccessors.intProperty(Employee.class, "person.age").applyAsInt(employee));
+    }
+
+    private static class Nicknamed extends Person {
+        private final String nickname;
+
+        Nicknamed(String firstName, String lastName, int age, String nickname) {
+            super(firstName, lastName, age);
+            this.nickname = nickname;
+        }
+
+        @Override
+        public String getFirstName() {
+            return nickname;
+        }
+
+        public String getNickname() {
+            return nickname;
+        }
+    }
+
+    @Test
+    public void propertyOfPrivateSubclass() {
+        final Nicknamed person = new Nicknamed("a", "b", 33, "c");
+
+        // linked against Person.getFirstName, still calls the override
+        assertEquals("c", PropertyAccessors.stringProperty(Nicknamed.class, "firstName").apply(person));
+        assertEquals(33, PropertyAccessors.intProperty(Nicknamed.class, "age").applyAsInt(person));
+        // declared by the private class only, called through reflection
+        assertEquals("c", PropertyAccessors.stringProperty(Nicknamed.class, "nickname").apply(person));
+        assertEquals(true, Expressions.field("nickname").eq("c").test(person));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownProperty() {
+        PropertyAccessors.function(Person.class, "middleName");
+    }
+
+    @Test
+    public void emptyPropertyName() {
+        for (String path : new String[]{"", ".age", "person.", "person..age"}) {
+            try {
+                PropertyAccessors.function(Employee.class, path);
+                throw new AssertionError(path);
+            } catch (IllegalArgumentException e) {
+                assertEquals("Employee path \"" + path + "\" has an empty property name", e.getMessage());
+            }
+        }
+        try {
+            PropertyAccessors.intProperty(Employee.class, "person.");
+            throw new AssertionError();
+        } catch (IllegalArgumentException e) {
+            assertEquals("Employee path \"person.\" has an empty property name", e.getMessage());
+        }
+    }
+
     @Test
     public void checkProperty() {
         // String -> boolean
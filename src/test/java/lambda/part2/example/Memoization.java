@@ -0,0 +1,317 @@
+package lambda.part2.example;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import data.Person;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class Memoization {
+
+    public enum Eviction {
+        // Guava cache, least recently used per segment
+        LRU,
+        // Caffeine cache, W-TinyLFU: frequency based admission, keeps popular keys under scans
+        TINY_LFU
+    }
+
+    public static class Stats {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+
+        public Stats(long hits, long misses, long evictions) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public double hitRate() {
+            final long requests = hits + misses;
+            return requests == 0 ? 1.0 : (double) hits / requests;
+        }
+
+        @Override
+        public String toString() {
+            return new ToStringBuilder(this)
+                    .append("hits", hits)
+                    .append("misses", misses)
+                    .append("evictions", evictions)
+                    .toString();
+        }
+    }
+
+    private interface Store<T, R> {
+        // loads a missing key once, concurrent callers for the same key wait for that load
+        R get(T key, Function<T, R> load);
+
+        long size();
+
+        Stats stats();
+    }
+
+    // T -> R, results are kept in a bounded concurrent cache. null keys and null results are not cached.
+    // Weak keys are compared by identity and dropped once the key is not referenced elsewhere.
+    public static class MemoizingFunction<T, R> implements Function<T, R> {
+        private final Function<T, R> function;
+        private final Store<T, R> store;
+
+        private MemoizingFunction(Function<T, R> function, Store<T, R> store) {
+            this.function = function;
+            this.store = store;
+        }
+
+        public static <T, R> Builder<T, R> of(Function<T, R> function) {
+            return new Builder<>(function);
+        }
+
+        @Override
+        public R apply(T t) {
+            if (t == null) {
+                return function.apply(null);
+            }
+
+            return store.get(t, function);
+        }
+
+        public long size() {
+            return store.size();
+        }
+
+        public Stats stats() {
+            return store.stats();
+        }
+    }
+
+    public static class Builder<T, R> {
+        private final Function<T, R> function;
+        private long maximumSize = 10_000;
+        private Eviction eviction = Eviction.TINY_LFU;
+        private boolean weakKeys;
+
+        private Builder(Function<T, R> function) {
+            this.function = function;
+        }
+
+        public Builder<T, R> maximumSize(long maximumSize) {
+            this.maximumSize = maximumSize;
+            return this;
+        }
+
+        public Builder<T, R> eviction(Eviction eviction) {
+            this.eviction = eviction;
+            return this;
+        }
+
+        public Builder<T, R> weakKeys() {
+            this.weakKeys = true;
+            return this;
+        }
+
+        public MemoizingFunction<T, R> build() {
+            return new MemoizingFunction<>(function, eviction == Eviction.LRU ? guavaStore() : caffeineStore());
+        }
+
+        private Store<T, R> guavaStore() {
+            final CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder()
+                    .maximumSize(maximumSize)
+                    .recordStats();
+            final com.google.common.cache.Cache<T, R> cache = (weakKeys ? builder.weakKeys() : builder).build();
+            return new Store<T, R>() {
+                @Override
+                public R get(T key, Function<T, R> load) {
+                    try {
+                        return cache.get(key, () -> load.apply(key));
+                    } catch (CacheLoader.InvalidCacheLoadException e) {
+                        // the function returned null, which Guava refuses to cache
+                        return null;
+                    } catch (UncheckedExecutionException | ExecutionError e) {
+                        Throwables.propagateIfPossible(e.getCause());
+                        throw e;
+                    } catch (ExecutionException e) {
+                        throw new UncheckedExecutionException(e.getCause());
+                    }
+                }
+
+                @Override
+                public long size() {
+                    cache.cleanUp();
+                    return cache.size();
+                }
+
+                @Override
+                public Stats stats() {
+                    final com.google.common.cache.CacheStats stats = cache.stats();
+                    return new Stats(stats.hitCount(), stats.missCount(), stats.evictionCount());
+                }
+            };
+        }
+
+        private Store<T, R> caffeineStore() {
+            final Caffeine<Object, Object> builder = Caffeine.newBuilder()
+                    .maximumSize(maximumSize)
+                    // evict on the calling thread, so size and stats are exact after cleanUp
+                    .executor(Runnable::run)
+                    .recordStats();
+            final com.github.benmanes.caffeine.cache.Cache<T, R> cache = (weakKeys ? builder.weakKeys() : builder).build();
+            return new Store<T, R>() {
+                @Override
+                public R get(T key, Function<T, R> load) {
+                    // a null result is returned without being cached
+                    return cache.get(key, load);
+                }
+
+                @Override
+                public long size() {
+                    cache.cleanUp();
+                    return cache.estimatedSize();
+                }
+
+                @Override
+                public Stats stats() {
+                    cache.cleanUp();
+                    final com.github.benmanes.caffeine.cache.stats.CacheStats stats = cache.stats();
+                    return new Stats(stats.hitCount(), stats.missCount(), stats.evictionCount());
+                }
+            };
+        }
+    }
+
+    @Test
+    public void memoizeComposedFunction() {
+        final AtomicInteger calls = new AtomicInteger();
+        final Function<Person, String> fullName = p -> {
+            calls.incrementAndGet();
+            return p.getFirstName() + " " + p.getLastName();
+        };
+
+        for (Eviction eviction : Eviction.values()) {
+            calls.set(0);
+            final MemoizingFunction<Person, Integer> fullNameLength = MemoizingFunction.of(fullName.andThen(String::length))
+                    .eviction(eviction)
+                    .build();
+
+            final Person person = new Person("John", "Galt", 33);
+            assertEquals(Integer.valueOf(9), fullNameLength.apply(person));
+            assertEquals(Integer.valueOf(9), fullNameLength.apply(new Person("John", "Galt", 33)));
+            assertEquals(Integer.valueOf(9), fullNameLength.apply(person));
+
+            assertEquals(1, calls.get());
+            assertEquals(2, fullNameLength.stats().getHits());
+            assertEquals(1, fullNameLength.stats().getMisses());
+        }
+    }
+
+    @Test
+    public void boundedSize() {
+        for (Eviction eviction : Eviction.values()) {
+            final MemoizingFunction<Integer, Integer> square = MemoizingFunction.of((Integer i) -> i * i)
+                    .eviction(eviction)
+                    .maximumSize(10)
+                    .build();
+
+            for (int i = 0; i < 100; i++) {
+                assertEquals(Integer.valueOf(i * i), square.apply(i));
+            }
+
+            assertTrue(square.size() <= 10);
+            assertTrue(square.stats().getEvictions() >= 90);
+        }
+    }
+
+    @Test
+    public void sharedAcrossThreads() {
+        final AtomicInteger calls = new AtomicInteger();
+        final MemoizingFunction<Person, String> lastName = MemoizingFunction.of((Person p) -> {
+            calls.incrementAndGet();
+            return p.getLastName();
+        }).weakKeys().build();
+
+        final Person[] persons = new Person[16];
+        for (int i = 0; i < persons.length; i++) {
+            persons[i] = new Person("name " + i, "lastName " + i, i);
+        }
+
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            pool.submit(() -> IntStream.range(0, 10_000).parallel()
+                    .forEach(i -> assertEquals("lastName " + i % 16, lastName.apply(persons[i % 16]))))
+                    .join();
+        } finally {
+            pool.shutdown();
+        }
+
+        assertTrue(calls.get() < 10_000);
+        assertEquals(16, lastName.size());
+    }
+
+    @Test
+    public void concurrentMissesLoadOnce() throws InterruptedException {
+        for (Eviction eviction : Eviction.values()) {
+            final AtomicInteger calls = new AtomicInteger();
+            final CountDownLatch loading = new CountDownLatch(1);
+            final MemoizingFunction<Integer, Integer> slowSquare = MemoizingFunction.of((Integer i) -> {
+                calls.incrementAndGet();
+                loading.countDown();
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return i * i;
+            }).eviction(eviction).build();
+
+            final Thread first = new Thread(() -> slowSquare.apply(7));
+            first.start();
+            loading.await();
+            // the second caller arrives while the first one is still loading the key
+            assertEquals(Integer.valueOf(49), slowSquare.apply(7));
+            first.join();
+
+            assertEquals(1, calls.get());
+        }
+    }
+
+    @Test
+    public void nullResultsAreNotCached() {
+        for (Eviction eviction : Eviction.values()) {
+            final AtomicInteger calls = new AtomicInteger();
+            final MemoizingFunction<Integer, Integer> none = MemoizingFunction.<Integer, Integer>of(i -> {
+                calls.incrementAndGet();
+                return null;
+            }).eviction(eviction).build();
+
+            assertEquals(null, none.apply(1));
+            assertEquals(null, none.apply(1));
+
+            assertEquals(2, calls.get());
+            assertEquals(0, none.size());
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package lambda.part3.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+
+// p1 && p2 && ... evaluated in the order with the lowest expected cost.
+// About every SAMPLE_PERIOD-th call evaluates and times all predicates; every REORDER_PERIOD samples
+// the predicates are sorted by cost / (1 - pass rate), cheap and selective first.
+// Predicates must be free of side effects, they are evaluated more often than in declared order.
+// A predicate that throws where an earlier declared one is false depends on it (a guard such as
+// e.getPerson() != null) and is never moved ahead of it; the result is always the declared order's.
+public class AdaptiveConjunction<T> implements Predicate<T> {
+    private static final int SAMPLE_PERIOD = 16;
+    private static final int REORDER_PERIOD = 256;
+
+    private final List<Predicate<? super T>> predicates;
+    private volatile int[] order;
+
+    // guarded by this
+    private final long[] sampled;
+    private final long[] passed;
+    private final long[] nanos;
+    // dependsOn[j][i]: j threw where i was false, so j stays after i
+    private final boolean[][] dependsOn;
+    private long samples;
+    private final List<String> history;
+
+    public AdaptiveConjunction(List<Predicate<? super T>> predicates) {
+        this.predicates = new ArrayList<>(predicates);
+        final int size = predicates.size();
+        this.order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        this.sampled = new long[size];
+        this.passed = new long[size];
+        this.nanos = new long[size];
+        this.dependsOn = new boolean[size][size];
+        this.history = new ArrayList<>();
+    }
+
+    // source with one more predicate, which starts last and without statistics
+    private AdaptiveConjunction(AdaptiveConjunction<T> source, Predicate<? super T> other) {
+        synchronized (source) {
+            final int size = source.predicates.size() + 1;
+            this.predicates = new ArrayList<>(source.predicates);
+            this.predicates.add(other);
+            this.order = Arrays.copyOf(source.order, size);
+            this.order[size - 1] = size - 1;
+            this.sampled = Arrays.copyOf(source.sampled, size);
+            this.passed = Arrays.copyOf(source.passed, size);
+            this.nanos = Arrays.copyOf(source.nanos, size);
+            this.dependsOn = new boolean[size][];
+            for (int i = 0; i < size; i++) {
+                dependsOn[i] = i < size - 1 ? Arrays.copyOf(source.dependsOn[i], size) : new boolean[size];
+            }
+            this.samples = source.samples;
+            this.history = new ArrayList<>(source.history);
+        }
+    }
+
+    @Override
+    public boolean test(T t) {
+        if (ThreadLocalRandom.current().nextInt(SAMPLE_PERIOD) == 0) {
+            return sample(t);
+        }
+
+        try {
+            for (int i : order) {
+                if (!predicates.get(i).test(t)) {
+                    return false;
+                }
+            }
+        } catch (RuntimeException e) {
+            // maybe a guard was moved behind its dependent, the declared order decides
+            return sample(t);
+        }
+
+        return true;
+    }
+
+    // In declared order, but no short circuit, so every predicate gets an unconditional pass rate.
+    // An exception counts as false once an earlier predicate is false, otherwise it is rethrown.
+    private boolean sample(T t) {
+        final int size = predicates.size();
+        final boolean[] results = new boolean[size];
+        final long[] elapsed = new long[size];
+        boolean result = true;
+        List<Integer> dependents = null;
+        for (int i = 0; i < size; i++) {
+            final long start = System.nanoTime();
+            try {
+                results[i] = predicates.get(i).test(t);
+            } catch (RuntimeException e) {
+                if (result) {
+                    throw e;
+                }
+                if (dependents == null) {
+                    dependents = new ArrayList<>();
+                }
+                dependents.add(i);
+            }
+            elapsed[i] = System.nanoTime() - start;
+            result &= results[i];
+        }
+
+        synchronized (this) {
+            for (int i = 0; i < size; i++) {
+                sampled[i]++;
+                passed[i] += results[i] ? 1 : 0;
+                nanos[i] += elapsed[i];
+            }
+            if (dependents != null && addDependencies(dependents, results)) {
+                arrange(rank());
+            }
+            if (++samples % REORDER_PERIOD == 0) {
+                reorder();
+            }
+        }
+
+        return result;
+    }
+
+    // true if a new dependency was found
+    private boolean addDependencies(List<Integer> dependents, boolean[] results) {
+        boolean added = false;
+        for (int j : dependents) {
+            for (int i = 0; i < j; i++) {
+                if (!results[i] && !dependsOn[j][i]) {
+                    dependsOn[j][i] = true;
+                    added = true;
+                }
+            }
+        }
+        return added;
+    }
+
+    private void reorder() {
+        final double[] rank = rank();
+        // halve the statistics, so old samples fade out
+        for (int i = 0; i < rank.length; i++) {
+            sampled[i] = (sampled[i] + 1) / 2;
+            passed[i] /= 2;
+            nanos[i] /= 2;
+        }
+        arrange(rank);
+    }
+
+    private double[] rank() {
+        final int size = predicates.size();
+        final double[] rank = new double[size];
+        for (int i = 0; i < size; i++) {
+            if (sampled[i] == 0) {
+                rank[i] = Double.POSITIVE_INFINITY;
+                continue;
+            }
+            final double cost = (double) nanos[i] / sampled[i];
+            final double rejectRate = 1 - (double) passed[i] / sampled[i];
+            rank[i] = rejectRate == 0 ? Double.POSITIVE_INFINITY : cost / rejectRate;
+        }
+        return rank;
+    }
+
+    // lowest rank first among the predicates whose dependencies are placed, ties in declared order
+    private void arrange(double[] rank) {
+        final int size = rank.length;
+        final boolean[] placed = new boolean[size];
+        final int[] chosen = new int[size];
+        for (int n = 0; n < size; n++) {
+            int next = -1;
+            for (int j = 0; j < size; j++) {
+                if (!placed[j] && ready(j, placed) && (next < 0 || rank[j] < rank[next])) {
+                    next = j;
+                }
+            }
+            placed[next] = true;
+            chosen[n] = next;
+        }
+
+        if (!Arrays.equals(chosen, order)) {
+            order = chosen;
+            history.add("after ~" + samples * SAMPLE_PERIOD + " calls: " + Arrays.toString(chosen));
+        }
+    }
+
+    // dependencies point to earlier declared predicates only, so the first unplaced one is always ready
+    private boolean ready(int j, boolean[] placed) {
+        for (int i = 0; i < j; i++) {
+            if (dependsOn[j][i] && !placed[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // keeps the statistics and dependencies learned so far
+    @Override
+    public AdaptiveConjunction<T> and(Predicate<? super T> other) {
+        return new AdaptiveConjunction<>(this, other);
+    }
+
+    // indexes in declaration order
+    public int[] getOrder() {
+        return order.clone();
+    }
+
+    public synchronized List<String> getHistory() {
+        return Collections.unmodifiableList(new ArrayList<>(history));
+    }
+
+    @Override
+    public String toString() {
+        return "AdaptiveConjunction" + Arrays.toString(order);
+    }
+}
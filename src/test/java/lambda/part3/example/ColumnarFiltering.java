@@ -0,0 +1,151 @@
+package lambda.part3.example;
+
+import data.Employee;
+import data.EmployeeBitmapIndex;
+import data.EmployeeTable;
+import data.JobHistoryEntry;
+import data.Person;
+import data.StringDictionary;
+import lambda.part3.example.Filtering.LazyFilterUtil;
+import org.junit.Test;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+
+import static data.EmployeeBitmapIndex.and;
+import static data.Expressions.anyJob;
+import static data.Expressions.field;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ColumnarFiltering {
+
+    private static final List<Employee> EMPLOYEES =
+            Arrays.asList(
+                    new Employee(
+                            new Person("Bob", "Galt", 30),
+                            Arrays.asList(
+                                    new JobHistoryEntry(2, "dev", "epam"),
+                                    new JobHistoryEntry(1, "dev", "google")
+                            )),
+                    new Employee(
+                            new Person("John", "Galt", 30),
+                            Arrays.asList(
+                                    new JobHistoryEntry(2, "dev", "epam"),
+                                    new JobHistoryEntry(1, "dev", "google")
+                            )),
+                    new Employee(
+                            new Person("John", "Doe", 40),
+                            Arrays.asList(
+                                    new JobHistoryEntry(3, "QA", "yandex"),
+                                    new JobHistoryEntry(1, "QA", "epam"),
+                                    new JobHistoryEntry(1, "dev", "abc")
+                            )),
+                    new Employee(
+                            new Person("John", "White", 50),
+                            Collections.singletonList(
+                                    new JobHistoryEntry(5, "QA", "epam")
+                            ))
+            );
+
+    @Test
+    public void roundTrip() {
+        final EmployeeTable table = EmployeeTable.of(EMPLOYEES);
+
+        assertEquals(4, table.size());
+        assertEquals(EMPLOYEES, table.employees(table.rows(row -> true)));
+    }
+
+    @Test
+    public void columnFiltering() {
+        final EmployeeTable t = EmployeeTable.of(EMPLOYEES);
+        final int john = t.code("John");
+        final int dev = t.code("dev");
+        final int epam = t.code("epam");
+
+        final int[] rows = t.rows(r -> t.firstNameCode(r) == john
+                && t.anyJob(r, j -> t.positionCode(j) == dev)
+                && t.anyJob(r, j -> t.employerCode(j) == epam && t.duration(j) > 1));
+
+        assertArrayEquals(new int[]{1}, rows);
+        assertEquals(new Person("John", "Galt", 30), t.person(rows[0]));
+        assertEquals(Collections.singletonList(EMPLOYEES.get(1)), t.employees(rows));
+    }
+
+    @Test
+    public void bitmapFiltering() {
+        final EmployeeBitmapIndex index = EmployeeBitmapIndex.of(EMPLOYEES);
+
+        // John Doe worked 1 year in epam and 3 in yandex: the job conditions hold for one entry only
+        final RoaringBitmap epamMoreThanOneYear =
+                index.anyJob(and(index.jobsWithEmployer("epam"), index.jobsWithDuration(2, Integer.MAX_VALUE)));
+        final RoaringBitmap selected = and(index.firstName("John"), index.position("dev"), epamMoreThanOneYear);
+
+        assertEquals(RoaringBitmap.bitmapOf(0, 1, 3), epamMoreThanOneYear);
+        assertEquals(RoaringBitmap.bitmapOf(1), selected);
+        assertEquals(Collections.singletonList(EMPLOYEES.get(1)), index.get(selected));
+        assertEquals(RoaringBitmap.bitmapOf(2, 3), index.not(index.employer("google")));
+
+        // results may be changed in place, the index keeps its bitmaps
+        index.firstName("John").clear();
+        index.firstName("Nobody").add(0);
+        assertEquals(RoaringBitmap.bitmapOf(1, 2, 3), index.firstName("John"));
+        assertEquals(new RoaringBitmap(), index.firstName("Nobody"));
+        assertEquals(new RoaringBitmap(), index.lastName("Nobody"));
+    }
+
+    @Test
+    public void bitmapSelect() {
+        final EmployeeBitmapIndex index = EmployeeBitmapIndex.of(EMPLOYEES);
+
+        assertEquals(Collections.singletonList(EMPLOYEES.get(1)), index.select(field("person.firstName").eq("John")
+                .and(anyJob(field("position").eq("dev")))
+                .and(anyJob(field("employer").eq("epam").and(field("duration").gt(1))))));
+        // age is not indexed, it is tested on the survivors of the other conditions
+        assertEquals(Arrays.asList(EMPLOYEES.get(2), EMPLOYEES.get(3)), index.select(field("person.age").ge(40)
+                .and(anyJob(field("position").eq("QA")))));
+        assertEquals(Arrays.asList(EMPLOYEES.get(0), EMPLOYEES.get(1)), index.select(anyJob(field("employer").eq("google"))
+                .or(field("person.lastName").eq("Galt"))));
+    }
+
+    @Test
+    public void dictionaryCodes() {
+        // built once, every test is an int compare
+        final Predicate<JobHistoryEntry> dev = JobHistoryEntry.positionIs("dev");
+        final Predicate<JobHistoryEntry> epamMoreThanOneYear = JobHistoryEntry.employerIs("epam").and(j -> j.getDuration() > 1);
+        final List<Employee> filteredList = new LazyFilterUtil<>(EMPLOYEES)
+                .filter(e -> e.getPerson().getFirstName().equals("John"))
+                .filter(e -> e.anyJob(dev))
+                .filter(e -> e.anyJob(epamMoreThanOneYear))
+                .force();
+
+        assertEquals(filteredList.size(), 1);
+        assertEquals(filteredList.get(0).getPerson(), new Person("John", "Galt", 30));
+
+        // a query does not grow the dictionary, and still matches entries created after it
+        final int size = StringDictionary.global().size();
+        final Predicate<JobHistoryEntry> architect = JobHistoryEntry.positionIs("dictionaryCodes architect");
+        assertEquals(size, StringDictionary.global().size());
+        assertTrue(architect.test(new JobHistoryEntry(1, "dictionaryCodes architect", "epam")));
+        assertFalse(architect.test(new JobHistoryEntry(1, "dev", "epam")));
+    }
+
+    @Test
+    public void dictionaryDeduplicates() {
+        final StringDictionary dictionary = StringDictionary.global();
+        final long savedBefore = dictionary.savedBytes();
+
+        final JobHistoryEntry first = new JobHistoryEntry(1, new String("dev"), new String("epam"));
+        final JobHistoryEntry second = new JobHistoryEntry(2, new String("dev"), new String("epam"));
+
+        assertSame(first.getEmployer(), second.getEmployer());
+        assertEquals(first.getEmployerCode(), second.getEmployerCode());
+        assertTrue(dictionary.savedBytes() > savedBefore);
+    }
+}
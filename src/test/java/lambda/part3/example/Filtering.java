@@ -5,13 +5,22 @@ import data.JobHistoryEntry;
 import data.Person;
 import org.junit.Test;
 
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Predicate;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class Filtering {
     @Test
@@ -66,7 +75,7 @@ public class Filtering {
         }
 
         // [T] -> (T -> boolean) -> [T]
-        private FilterUtil<T> filter(Predicate<T> condition) {
+        public FilterUtil<T> filter(Predicate<T> condition) {
             final List<T> res = new ArrayList<T>();
             for (T t : list) {
                 if (condition.test(t)) {
@@ -134,30 +143,219 @@ public class Filtering {
         assertEquals(filteredList.get(0).getPerson(), new Person("John", "Galt", 30));
     }
 
+    @Test
+    public void filtering_anyJob() {
+        final List<Employee> employees =
+                Arrays.asList(
+                        new Employee(
+                                new Person("Bob", "Galt", 30),
+                                Arrays.asList(
+                                        new JobHistoryEntry(2, "dev", "epam"),
+                                        new JobHistoryEntry(1, "dev", "google")
+                                )),
+                        new Employee(
+                                new Person("John", "Galt", 30),
+                                Arrays.asList(
+                                        new JobHistoryEntry(2, "dev", "epam"),
+                                        new JobHistoryEntry(1, "dev", "google")
+                                )),
+                        new Employee(
+                                new Person("John", "Doe", 40),
+                                Arrays.asList(
+                                        new JobHistoryEntry(3, "QA", "yandex"),
+                                        new JobHistoryEntry(1, "QA", "epam"),
+                                        new JobHistoryEntry(1, "dev", "abc")
+                                ))
+                );
+
+        final List<Employee> filteredList = new FilterUtil<>(employees)
+                .filter(e -> e.getPerson().getFirstName().equals("John"))
+                .filter(e -> e.anyJob(j -> j.getPosition().equals("dev")))
+                .filter(e -> e.anyJob(j -> j.getEmployer().equals("epam") && j.getDuration() > 1))
+                .getList();
+
+        assertEquals(filteredList.size(), 1);
+        assertEquals(filteredList.get(0).getPerson(), new Person("John", "Galt", 30));
+    }
+
     public static class LazyFilterUtil<T> {
         private final List<T> list;
         private final Predicate<T> condition;
+        // null if not instrumented
+        private final PipelineMetrics metrics;
+        private final int stages;
 
         public LazyFilterUtil(List<T> list, Predicate<T> condition) {
+            this(list, condition, null, condition == null ? 0 : 1);
+        }
+
+        private LazyFilterUtil(List<T> list, Predicate<T> condition, PipelineMetrics metrics, int stages) {
             this.list = list;
             this.condition = condition;
+            this.metrics = metrics;
+            this.stages = stages;
         }
 
         public LazyFilterUtil(List<T> list) {
             this(list, null);
         }
 
+        public Predicate<T> getCondition() {
+            return condition;
+        }
+
+        // conditions added after this call are reordered at runtime, see AdaptiveConjunction
+        public LazyFilterUtil<T> adaptive() {
+            final List<Predicate<? super T>> conditions = condition == null
+                    ? Collections.<Predicate<? super T>>emptyList()
+                    : Collections.<Predicate<? super T>>singletonList(condition);
+            return new LazyFilterUtil<T>(list, new AdaptiveConjunction<>(conditions), metrics, stages);
+        }
+
+        // conditions kept up to date with the changes of source, see LiveFilter
+        public static <T> LiveFilter<T> over(LiveView.Source<T> source) {
+            return new LiveFilter<>(source, null);
+        }
+
+        // conditions added before this call are recorded as one stage, each later condition as its own stage
+        public LazyFilterUtil<T> instrument(String pipeline) {
+            final PipelineMetrics metrics = PipelineMetrics.of(pipeline);
+            return new LazyFilterUtil<T>(list, condition == null ? null : metrics.filter(0, condition), metrics, stages == 0 ? 0 : 1);
+        }
+
         public List<T> force() {
             if (condition == null) {
                 return list;
             }
 
-            return new FilterUtil<>(list).filter(condition).getList();
+            final PipelineMetrics.Run run = startRun();
+            if (run == null) {
+                return new FilterUtil<>(list).filter(condition).getList();
+            }
+            try {
+                final List<T> result = new ArrayList<>();
+                for (T t : list) {
+                    if (matches(t, run)) {
+                        result.add(t);
+                    }
+                }
+                return result;
+            } finally {
+                run.finish();
+            }
         }
 
-        private LazyFilterUtil<T> filter(Predicate<T> condition) {
-            final Predicate<T> combinedCondition = combine(this.condition, condition);
-            return new LazyFilterUtil<T>(list, combinedCondition);
+        public List<T> force(ForkJoinPool pool) {
+            return force(pool, RangeTask.DEFAULT_THRESHOLD);
+        }
+
+        public List<T> force(ForkJoinPool pool, int threshold) {
+            if (condition == null) {
+                return list;
+            }
+
+            // one run for all chunks, which record their stages on the pool threads
+            final PipelineMetrics.Run run = startRun();
+            try {
+                return pool.invoke(new RangeTask<T, T>(list, threshold, range -> new FilterUtil<>(range).filter(condition).getList()));
+            } finally {
+                finish(run);
+            }
+        }
+
+        // The terminals below stop reading the list as soon as the answer is known
+
+        // the first non-null match: Optional cannot hold null, so null elements are skipped
+        // (as by LazyCollectionHelper.findFirst)
+        public Optional<T> findFirst() {
+            final PipelineMetrics.Run run = startRun();
+            try {
+                for (T t : list) {
+                    if (t != null && matches(t, run)) {
+                        return Optional.of(t);
+                    }
+                }
+                return Optional.empty();
+            } finally {
+                finish(run);
+            }
+        }
+
+        // condition is not a stage of the pipeline, it is not recorded
+        public boolean anyMatch(Predicate<T> condition) {
+            final PipelineMetrics.Run run = startRun();
+            try {
+                for (T t : list) {
+                    if (matches(t, run) && condition.test(t)) {
+                        return true;
+                    }
+                }
+                return false;
+            } finally {
+                finish(run);
+            }
+        }
+
+        public List<T> limit(int n) {
+            final List<T> result = new ArrayList<>();
+            final PipelineMetrics.Run run = startRun();
+            try {
+                final Iterator<T> iterator = list.iterator();
+                while (result.size() < n && iterator.hasNext()) {
+                    final T t = iterator.next();
+                    if (matches(t, run)) {
+                        result.add(t);
+                    }
+                }
+            } finally {
+                finish(run);
+            }
+
+            return result;
+        }
+
+        // force(), sorted, first n; reads the whole list but keeps only n elements
+        public List<T> topK(int n, Comparator<? super T> comparator) {
+            final TopK<T> top = new TopK<>(n, comparator);
+            if (n > 0) {
+                final PipelineMetrics.Run run = startRun();
+                try {
+                    for (T t : list) {
+                        if (matches(t, run)) {
+                            top.offer(t);
+                        }
+                    }
+                } finally {
+                    finish(run);
+                }
+            }
+            return top.result();
+        }
+
+        // null while not instrumented
+        private PipelineMetrics.Run startRun() {
+            return metrics != null && metrics.isEnabled() ? metrics.startRun() : null;
+        }
+
+        private static void finish(PipelineMetrics.Run run) {
+            if (run != null) {
+                run.finish();
+            }
+        }
+
+        private boolean matches(T t, PipelineMetrics.Run run) {
+            if (run != null) {
+                run.sampleAllocation();
+            }
+            return condition == null || condition.test(t);
+        }
+
+        // ? super T, so Expressions conditions (Predicate<Object>) are accepted
+        @SuppressWarnings("unchecked")
+        public LazyFilterUtil<T> filter(Predicate<? super T> condition) {
+            final Predicate<T> c = (Predicate<T>) condition;
+            final Predicate<T> combinedCondition = combine(this.condition, metrics == null ? c : metrics.filter(stages, c));
+            return new LazyFilterUtil<T>(list, combinedCondition, metrics, stages + 1);
         }
 
         private Predicate<T> combine(Predicate<T> c1, Predicate<T> c2) {
@@ -169,12 +367,32 @@ public class Filtering {
         }
     }
 
+    // The conditions of LazyFilterUtil over a LiveView.Source
+    public static class LiveFilter<T> {
+        private final LiveView.Source<T> source;
+        private final Predicate<T> condition;
+
+        private LiveFilter(LiveView.Source<T> source, Predicate<T> condition) {
+            this.source = source;
+            this.condition = condition;
+        }
+
+        // ? super T, as LazyFilterUtil.filter
+        @SuppressWarnings("unchecked")
+        public LiveFilter<T> filter(Predicate<? super T> condition) {
+            final Predicate<T> c = (Predicate<T>) condition;
+            return new LiveFilter<>(source, this.condition == null ? c : this.condition.and(c));
+        }
+
+        public LiveView<T> live() {
+            return LiveView.filtering(source, condition);
+        }
+    }
+
     private static boolean workedInEpamMoreThenOneYearLazy(Employee e) {
         return new LazyFilterUtil<>(e.getJobHistory())
                 .filter(j -> j.getEmployer().equals("epam"))
-                .filter(j -> j.getDuration() > 1)
-                .force()
-                .size() > 0;
+                .anyMatch(j -> j.getDuration() > 1);
     }
 
 
@@ -212,4 +430,230 @@ public class Filtering {
         assertEquals(filteredList.get(0).getPerson(), new Person("John", "Galt", 30));
     }
 
+    private static boolean slowHasDevExperience(Employee e) {
+        long sum = 0;
+        for (int i = 0; i < 1000; i++) {
+            sum += e.getPerson().getLastName().hashCode() * i;
+        }
+        return sum != 1 && hasDevExperience(e);
+    }
+
+    @Test
+    public void adaptive_lazy_filtering() {
+        final List<Employee> employees = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            employees.add(new Employee(
+                    new Person(i % 10 == 0 ? "John" : "Bob", "Doe " + i, 30),
+                    Collections.singletonList(new JobHistoryEntry(2, "dev", "epam"))));
+        }
+
+        // expensive and never rejects, declared before the cheap selective one
+        final LazyFilterUtil<Employee> johns = new LazyFilterUtil<>(employees)
+                .adaptive()
+                .filter(Filtering::slowHasDevExperience)
+                .filter(e -> e.getPerson().getFirstName().equals("John"));
+
+        assertEquals(2000, johns.force().size());
+
+        final AdaptiveConjunction<Employee> condition = (AdaptiveConjunction<Employee>) johns.getCondition();
+        assertArrayEquals(new int[]{1, 0}, condition.getOrder());
+        assertEquals(1, condition.getHistory().size());
+        // what was learned is kept by a longer conjunction
+        assertArrayEquals(new int[]{1, 0, 2}, condition.and(e -> true).getOrder());
+    }
+
+    private static boolean slowHasPerson(Employee e) {
+        long sum = 0;
+        for (int i = 0; i < 1000; i++) {
+            sum += e.getJobHistory().hashCode() * i;
+        }
+        return sum != 1 && e.getPerson() != null;
+    }
+
+    @Test
+    public void adaptive_lazy_filtering_keeps_guards() {
+        final List<Employee> employees = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            employees.add(new Employee(
+                    i % 20 == 1 ? null : new Person(i % 10 == 0 ? "John" : "Bob", "Doe " + i, 30),
+                    Collections.singletonList(new JobHistoryEntry(2, "dev", "epam"))));
+        }
+
+        // cheap and selective, but throws without the expensive guard declared before it
+        final LazyFilterUtil<Employee> johns = new LazyFilterUtil<>(employees)
+                .adaptive()
+                .filter(Filtering::slowHasPerson)
+                .filter(e -> e.getPerson().getFirstName().equals("John"));
+
+        assertEquals(2000, johns.force().size());
+        assertArrayEquals(new int[]{0, 1}, ((AdaptiveConjunction<Employee>) johns.getCondition()).getOrder());
+
+        // employees without a person are still values
+        final Employee unknown = employees.get(1);
+        assertEquals(new Employee(null, unknown.getJobHistory()), unknown);
+        assertEquals(new Employee(null, unknown.getJobHistory()).hashCode(), unknown.hashCode());
+    }
+
+    @Test
+    public void parallel_lazy_filtering() {
+        final List<Employee> employees = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            employees.add(new Employee(
+                    new Person(i % 2 == 0 ? "John" : "Bob", "Doe " + i, 30),
+                    Arrays.asList(
+                            new JobHistoryEntry(i % 3, "dev", "epam"),
+                            new JobHistoryEntry(1, "QA", "google")
+                    )));
+        }
+
+        final LazyFilterUtil<Employee> johns = new LazyFilterUtil<>(employees)
+                .filter(e -> e.getPerson().getFirstName().equals("John"))
+                .filter(Filtering::hasDevExperience)
+                .filter(Filtering::workedInEpamMoreThenOneYearLazy);
+
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertEquals(johns.force(), johns.force(pool, 16));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void lazy_find_first() {
+        final List<Person> persons = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            persons.add(new Person("name " + i, "lastName " + i, i % 70));
+        }
+
+        final int[] tested = {0};
+        final LazyFilterUtil<Person> age30 = new LazyFilterUtil<>(persons)
+                .filter(p -> {
+                    tested[0]++;
+                    return p.getAge() == 30;
+                });
+
+        assertEquals(Optional.of(new Person("name 30", "lastName 30", 30)), age30.findFirst());
+        assertEquals(31, tested[0]);
+
+        tested[0] = 0;
+        assertEquals(2, age30.limit(2).size());
+        assertEquals(101, tested[0]);
+
+        assertEquals(Arrays.asList(persons.get(100), persons.get(170), persons.get(240)),
+                age30.topK(3, Comparator.comparing(Person::getFirstName)));
+        assertEquals(false, age30.anyMatch(p -> p.getFirstName().equals("name 31")));
+
+        final LazyFilterUtil<String> withNull = new LazyFilterUtil<>(Arrays.asList(null, "a"));
+        assertEquals(Optional.of("a"), withNull.findFirst());
+        assertEquals(true, withNull.anyMatch(s -> s == null));
+    }
+
+    @Test
+    public void instrumented_lazy_filtering() throws MalformedObjectNameException {
+        final List<Person> persons = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            persons.add(new Person("name " + i, "lastName " + i, i % 100));
+        }
+
+        final PipelineMetrics metrics = PipelineMetrics.of("Filtering.instrumented");
+        try {
+            final List<Person> filtered = new LazyFilterUtil<>(persons)
+                    .instrument("Filtering.instrumented")
+                    .filter(p -> p.getAge() >= 50)
+                    .filter(p -> p.getFirstName().endsWith("0"))
+                    .force();
+
+            assertEquals(50, filtered.size());
+            assertEquals(1000, metrics.stage(0, "filter").getElementsIn());
+            assertEquals(500, metrics.stage(1, "filter").getElementsIn());
+            assertEquals(50, metrics.stage(1, "filter").getElementsOut());
+            assertTrue(metrics.stage(0, "filter").getP99Nanos() <= metrics.stage(0, "filter").getMaxNanos());
+            assertEquals(1, metrics.getRuns());
+
+            // terminals are runs too, and the condition of anyMatch is not a stage
+            final LazyFilterUtil<Person> adults = new LazyFilterUtil<>(persons)
+                    .instrument("Filtering.instrumented")
+                    .filter(p -> p.getAge() >= 18);
+            for (int i = 0; i < 3; i++) {
+                assertEquals(true, adults.anyMatch(p -> p.getAge() == 20));
+            }
+            assertEquals(4, metrics.getRuns());
+            // the two stages of the first pipeline, the second one reuses stage 0
+            assertEquals(2, ManagementFactory.getPlatformMBeanServer()
+                    .queryNames(new ObjectName("lambda.pipeline:type=Stage,pipeline=\"Filtering.instrumented\",*"), null).size());
+
+            // allocation is sampled: the second stage keeps an array per element
+            final List<long[]> kept = new ArrayList<>();
+            assertEquals(820, adults.filter(p -> kept.add(new long[16])).force().size());
+            if (PipelineMetrics.allocatedBytes() > 0) {
+                assertTrue(metrics.stage(1, "filter").getAllocatedBytesEstimate() >= 820 * 16 * 8);
+            }
+        } finally {
+            metrics.unregister();
+        }
+    }
+
+    @Test
+    public void live_filtering() {
+        final LiveView.Source<Employee> employees = new LiveView.Source<>();
+        final long bob = employees.add(new Employee(
+                new Person("Bob", "Galt", 30),
+                Arrays.asList(
+                        new JobHistoryEntry(2, "dev", "epam"),
+                        new JobHistoryEntry(1, "dev", "google")
+                )));
+        employees.add(new Employee(
+                new Person("John", "Galt", 30),
+                Arrays.asList(
+                        new JobHistoryEntry(2, "dev", "epam"),
+                        new JobHistoryEntry(1, "dev", "google")
+                )));
+        final long white = employees.add(new Employee(
+                new Person("John", "White", 50),
+                Collections.singletonList(
+                        new JobHistoryEntry(5, "QA", "epam")
+                )));
+
+        final int[] tested = {0};
+        final LiveView<Employee> johns = LazyFilterUtil.over(employees)
+                .filter(e -> {
+                    tested[0]++;
+                    return e.getPerson().getFirstName().equals("John");
+                })
+                .filter(Filtering::hasDevExperience)
+                .filter(Filtering::workedInEpamMoreThenOneYear)
+                .live();
+
+        assertEquals(Collections.singletonList("Galt"), lastNames(johns.toList()));
+        assertEquals(3, tested[0]);
+
+        // every change runs the pipeline for the changed employee only
+        tested[0] = 0;
+        employees.update(bob, e -> e.withPerson(e.getPerson().withFirstName("John")));
+        employees.update(white, e -> e.withJobHistory(Collections.singletonList(new JobHistoryEntry(5, "dev", "epam"))));
+        final long doe = employees.add(new Employee(
+                new Person("John", "Doe", 40),
+                Collections.singletonList(
+                        new JobHistoryEntry(3, "dev", "epam")
+                )));
+        assertEquals(3, tested[0]);
+        assertEquals(Arrays.asList("Galt", "Galt", "White", "Doe"), lastNames(johns.toList()));
+
+        employees.remove(bob);
+        employees.update(doe, e -> e.withPerson(e.getPerson().withFirstName("Bob")));
+        assertEquals(Arrays.asList("Galt", "White"), lastNames(johns.toList()));
+
+        johns.close();
+        employees.remove(white);
+        assertEquals(2, johns.size());
+    }
+
+    private static List<String> lastNames(List<Employee> employees) {
+        final List<String> result = new ArrayList<>();
+        for (Employee e : employees) {
+            result.add(e.getPerson().getLastName());
+        }
+        return result;
+    }
 }
@@ -0,0 +1,132 @@
+package lambda.part3.example;
+
+import data.Employee;
+import data.EmployeeRepository;
+import data.EmployeeRepository.Index;
+import data.Expressions.Condition;
+import data.JobHistoryEntry;
+import data.Person;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static data.Expressions.anyJob;
+import static data.Expressions.field;
+import static org.junit.Assert.assertEquals;
+
+public class Indexing {
+
+    private final Employee bobGalt = new Employee(
+            new Person("Bob", "Galt", 30),
+            Arrays.asList(
+                    new JobHistoryEntry(2, "dev", "epam"),
+                    new JobHistoryEntry(1, "dev", "google")
+            ));
+    private final Employee johnGalt = new Employee(
+            new Person("John", "Galt", 30),
+            Arrays.asList(
+                    new JobHistoryEntry(2, "dev", "epam"),
+                    new JobHistoryEntry(1, "dev", "google")
+            ));
+    private final Employee johnDoe = new Employee(
+            new Person("John", "Doe", 40),
+            Arrays.asList(
+                    new JobHistoryEntry(3, "QA", "yandex"),
+                    new JobHistoryEntry(1, "QA", "epam"),
+                    new JobHistoryEntry(1, "dev", "abc")
+            ));
+    private final Employee johnWhite = new Employee(
+            new Person("John", "White", 50),
+            Collections.singletonList(
+                    new JobHistoryEntry(5, "QA", "epam")
+            ));
+
+    @Test
+    public void multiValuedIndex() {
+        final EmployeeRepository repository =
+                new EmployeeRepository(Arrays.asList(bobGalt, johnGalt, johnDoe, johnWhite));
+
+        // uniqueIndex would fail on two Galts
+        final Index<String> byLastName = repository.indexByPerson(Person::getLastName);
+        final Index<String> byEmployer = repository.indexByJob(JobHistoryEntry::getEmployer);
+
+        assertEquals(2, byLastName.count("Galt"));
+        assertEquals(4, byEmployer.count("epam"));
+        assertEquals(1, byEmployer.count("yandex"));
+
+        repository.remove(johnDoe);
+        assertEquals(0, byEmployer.count("yandex"));
+        assertEquals(3, byEmployer.count("epam"));
+
+        repository.add(johnDoe.withPerson(johnDoe.getPerson().withLastName("Galt")));
+        assertEquals(3, byLastName.count("Galt"));
+    }
+
+    @Test
+    public void indexedQuery() {
+        final EmployeeRepository repository =
+                new EmployeeRepository(Arrays.asList(bobGalt, johnGalt, johnDoe, johnWhite));
+        final Index<String> byFirstName = repository.indexByPerson(Person::getFirstName);
+        final Index<String> byPosition = repository.indexByJob(JobHistoryEntry::getPosition);
+
+        final List<Employee> filteredList = repository.query()
+                .whereEquals(byFirstName, "John")
+                .whereEquals(byPosition, "dev")
+                .filter(e -> e.anyJob(j -> j.getEmployer().equals("epam") && j.getDuration() > 1))
+                .force();
+
+        assertEquals(Collections.singletonList(johnGalt), filteredList);
+    }
+
+    @Test
+    public void queryWithoutIndex() {
+        final EmployeeRepository repository =
+                new EmployeeRepository(Arrays.asList(bobGalt, johnGalt, johnDoe, johnWhite));
+
+        final List<Employee> filteredList = repository.query()
+                .filter(e -> e.getPerson().getAge() > 35)
+                .force();
+
+        assertEquals(Arrays.asList(johnDoe, johnWhite), filteredList);
+    }
+
+    @Test
+    public void expressionQuery() {
+        final List<Employee> employees = Arrays.asList(bobGalt, johnGalt, johnDoe, johnWhite);
+        final Condition condition = field("person.firstName").eq("John")
+                .and(anyJob(field("position").eq("dev")))
+                .and(anyJob(field("employer").eq("epam").and(field("duration").gt(1))));
+
+        assertEquals("(person.firstName == \"John\" && anyJob(position == \"dev\")"
+                + " && anyJob((employer == \"epam\" && duration > 1)))", condition.toString());
+
+        // still a plain predicate
+        assertEquals(Collections.singletonList(johnGalt), new Filtering.LazyFilterUtil<>(employees).filter(condition).force());
+
+        final EmployeeRepository repository = new EmployeeRepository(employees);
+        repository.indexByPerson("firstName");
+        repository.indexByJob("position");
+        repository.indexByJob("employer");
+
+        // the equalities are answered by the indexes: only John & dev & epam employees are tested
+        final int[] tested = {0};
+        final List<Employee> filteredList = repository.query()
+                .filter(e -> {
+                    tested[0]++;
+                    return true;
+                })
+                .where(condition)
+                .force();
+
+        assertEquals(Collections.singletonList(johnGalt), filteredList);
+        assertEquals(2, tested[0]);
+
+        // the index holds ints, the condition compares numbers by value
+        repository.indexByPerson("age");
+        assertEquals(Arrays.asList(bobGalt, johnGalt), repository.query().where(field("person.age").eq(30L)).force());
+        assertEquals(Arrays.asList(bobGalt, johnGalt), repository.query().where(field("person.age").eq(30.0)).force());
+        assertEquals(Collections.emptyList(), repository.query().where(field("person.age").eq(1L << 32 | 30)).force());
+    }
+}
@@ -0,0 +1,171 @@
+package lambda.part3.example;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+// Materialized result of a pipeline over a mutable Source, kept up to date with the source changes:
+// an add, remove or replace runs the pipeline for the changed element only, O(log size) per change.
+// Results are kept in source order. A pipeline must not depend on other elements of the source.
+// A change runs the pipelines of all views before it is applied: if one throws, the source and
+// every view stay as they were and the exception reaches the caller of add, remove or replace.
+public class LiveView<R> implements AutoCloseable {
+
+    // Elements with stable ids in insertion order; replace keeps the position of the element
+    public static class Source<T> implements Iterable<T> {
+        private final Map<Long, T> elements = new LinkedHashMap<>();
+        private final List<Listener<T>> listeners = new CopyOnWriteArrayList<>();
+        private long nextId;
+
+        public synchronized long add(T element) {
+            final long id = nextId;
+            final List<Runnable> commits = prepare(listener -> listener.added(id, element));
+            nextId++;
+            elements.put(id, element);
+            commits.forEach(Runnable::run);
+            return id;
+        }
+
+        public synchronized T get(long id) {
+            return elements.get(id);
+        }
+
+        public synchronized boolean remove(long id) {
+            if (!elements.containsKey(id)) {
+                return false;
+            }
+            final List<Runnable> commits = prepare(listener -> listener.removed(id));
+            elements.remove(id);
+            commits.forEach(Runnable::run);
+            return true;
+        }
+
+        public synchronized void replace(long id, T element) {
+            if (!elements.containsKey(id)) {
+                throw new NoSuchElementException("no element " + id);
+            }
+            final List<Runnable> commits = prepare(listener -> listener.replaced(id, element));
+            elements.put(id, element);
+            commits.forEach(Runnable::run);
+        }
+
+        // e.g. update(id, e -> e.withPerson(...))
+        public synchronized T update(long id, UnaryOperator<T> update) {
+            if (!elements.containsKey(id)) {
+                throw new NoSuchElementException("no element " + id);
+            }
+            final T element = update.apply(elements.get(id));
+            replace(id, element);
+            return element;
+        }
+
+        public synchronized int size() {
+            return elements.size();
+        }
+
+        // a snapshot, later changes are not visible
+        @Override
+        public synchronized Iterator<T> iterator() {
+            return new ArrayList<>(elements.values()).iterator();
+        }
+
+        // the pipeline of every view, nothing is changed yet
+        private List<Runnable> prepare(Function<Listener<T>, Runnable> change) {
+            final List<Runnable> commits = new ArrayList<>(listeners.size());
+            for (Listener<T> listener : listeners) {
+                commits.add(change.apply(listener));
+            }
+            return commits;
+        }
+
+        private synchronized void subscribe(Listener<T> listener) {
+            elements.forEach((id, element) -> listener.added(id, element).run());
+            listeners.add(listener);
+        }
+
+        private synchronized void unsubscribe(Listener<T> listener) {
+            listeners.remove(listener);
+        }
+    }
+
+    // runs the pipeline and returns the change of the results, which runs once the source has changed
+    private interface Listener<T> {
+        Runnable added(long id, T element);
+
+        Runnable removed(long id);
+
+        Runnable replaced(long id, T element);
+    }
+
+    private final Source<?> source;
+    private final Listener<?> listener;
+    // guarded by source, ids grow in insertion order
+    private final TreeMap<Long, R> results = new TreeMap<>();
+
+    private <T> LiveView(Source<T> source, Function<T, Optional<R>> pipeline) {
+        this.source = source;
+        final Listener<T> listener = new Listener<T>() {
+            @Override
+            public Runnable added(long id, T element) {
+                final Optional<R> result = pipeline.apply(element);
+                return () -> result.ifPresent(r -> results.put(id, r));
+            }
+
+            @Override
+            public Runnable removed(long id) {
+                return () -> results.remove(id);
+            }
+
+            @Override
+            public Runnable replaced(long id, T element) {
+                final Optional<R> result = pipeline.apply(element);
+                return () -> {
+                    if (result.isPresent()) {
+                        results.put(id, result.get());
+                    } else {
+                        results.remove(id);
+                    }
+                };
+            }
+        };
+        this.listener = listener;
+        source.subscribe(listener);
+    }
+
+    // element -> result, or empty if the element is filtered out
+    public static <T, R> LiveView<R> of(Source<T> source, Function<T, Optional<R>> pipeline) {
+        return new LiveView<>(source, pipeline);
+    }
+
+    public static <T> LiveView<T> filtering(Source<T> source, Predicate<T> condition) {
+        return new LiveView<>(source, t -> condition == null || condition.test(t) ? Optional.of(t) : Optional.empty());
+    }
+
+    public List<R> toList() {
+        synchronized (source) {
+            return new ArrayList<>(results.values());
+        }
+    }
+
+    public int size() {
+        synchronized (source) {
+            return results.size();
+        }
+    }
+
+    // stops following the source
+    @Override
+    @SuppressWarnings("unchecked")
+    public void close() {
+        ((Source<Object>) source).unsubscribe((Listener<Object>) listener);
+    }
+}
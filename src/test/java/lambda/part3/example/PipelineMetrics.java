@@ -0,0 +1,453 @@
+package lambda.part3.example;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+// Per pipeline and per stage counters of the lazy helpers, published on the platform MBeanServer as
+//   lambda.pipeline:type=Pipeline,name=<pipeline>
+//   lambda.pipeline:type=Stage,pipeline=<pipeline>,name=<index>-<kind>
+// Helpers check isEnabled() once per terminal call and use their plain loop while metrics are off;
+// every terminal call is one run, also when its chunks run in parallel. The allocated bytes of a run
+// are those of the thread that started it, stage allocation is sampled on the threads running the stage.
+// Stage nanos include System.nanoTime() itself, so they are exact only for stages slower than ~50 ns.
+// The MBeans, and the metrics behind them, stay registered for the lifetime of the JVM until
+// unregister() is called, also those created by instrument(name) of the helpers.
+public class PipelineMetrics {
+    private static final String DOMAIN = "lambda.pipeline";
+    // every ALLOCATION_SAMPLE_PERIOD-th element measures allocated bytes per stage
+    private static final int ALLOCATION_SAMPLE_PERIOD = 64;
+    private static final ConcurrentMap<String, PipelineMetrics> PIPELINES = new ConcurrentHashMap<>();
+    private static final com.sun.management.ThreadMXBean THREADS = allocationCounter();
+
+    public interface PipelineMXBean {
+        String getName();
+
+        boolean isEnabled();
+
+        void setEnabled(boolean enabled);
+
+        long getRuns();
+
+        long getAllocatedBytes();
+
+        void reset();
+    }
+
+    public interface StageMXBean {
+        String getName();
+
+        long getElementsIn();
+
+        long getElementsOut();
+
+        // out / in
+        double getSelectivity();
+
+        long getTotalNanos();
+
+        double getMeanNanos();
+
+        long getP50Nanos();
+
+        long getP90Nanos();
+
+        long getP99Nanos();
+
+        long getMaxNanos();
+
+        // sampled bytes scaled to all elements, -1 if the JVM can not count allocated bytes per thread
+        long getAllocatedBytesEstimate();
+
+        void reset();
+    }
+
+    private final String name;
+    private final Pipeline pipeline = new Pipeline();
+    // guarded by this
+    private final List<Stage> stages = new ArrayList<>();
+    // so that filter() stages know whether to sample allocation
+    private final ThreadLocal<Run> currentRun = new ThreadLocal<>();
+    private volatile boolean enabled = true;
+
+    private PipelineMetrics(String name) {
+        this.name = name;
+    }
+
+    // the same metrics for the same name, so a pipeline built in a loop is registered once
+    public static PipelineMetrics of(String name) {
+        return PIPELINES.computeIfAbsent(name, n -> {
+            final PipelineMetrics metrics = new PipelineMetrics(n);
+            register(pipelineName(n), metrics.pipeline, PipelineMXBean.class);
+            return metrics;
+        });
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long getRuns() {
+        return pipeline.runs.sum();
+    }
+
+    // stage of the index-th action, created and registered on first use
+    public synchronized Stage stage(int index, String kind) {
+        while (stages.size() <= index) {
+            stages.add(null);
+        }
+        Stage stage = stages.get(index);
+        if (stage == null) {
+            stage = new Stage(index + "-" + kind);
+            register(stageName(name, stage.name), stage, StageMXBean.class);
+            stages.set(index, stage);
+        }
+        return stage;
+    }
+
+    // t -> boolean, recorded as the index-th stage while enabled
+    public <T> Predicate<T> filter(int index, Predicate<T> condition) {
+        final Stage stage = stage(index, "filter");
+        return t -> {
+            if (!enabled) {
+                return condition.test(t);
+            }
+            final Run run = currentRun.get();
+            final boolean sampleAllocation = run != null && run.sampling;
+            final long bytes = sampleAllocation ? allocatedBytes() : 0;
+            final long start = System.nanoTime();
+            final boolean passed = condition.test(t);
+            stage.record(System.nanoTime() - start, passed);
+            if (sampleAllocation) {
+                stage.recordAllocation(allocatedBytes() - bytes);
+            }
+            return passed;
+        };
+    }
+
+    // the run of the calling thread until finish()
+    public Run startRun() {
+        final Run run = new Run(currentRun.get());
+        currentRun.set(run);
+        return run;
+    }
+
+    public void unregister() {
+        PIPELINES.remove(name, this);
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.unregisterMBean(pipelineName(name));
+            synchronized (this) {
+                for (Stage stage : stages) {
+                    if (stage != null) {
+                        server.unregisterMBean(stageName(name, stage.name));
+                    }
+                }
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("cannot unregister pipeline " + name, e);
+        }
+    }
+
+    // bytes allocated by the current thread so far, 0 if not supported
+    public static long allocatedBytes() {
+        return THREADS == null ? 0 : THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    // One pass of a helper over its source, used by one thread
+    public class Run {
+        private final long startBytes = allocatedBytes();
+        // chunks of a parallel run count elements from several threads
+        private final AtomicInteger elements = new AtomicInteger();
+        // a run of the same pipeline started by one of its stages
+        private final Run outer;
+        // the current element of a sequential run is sampled, for filter() stages
+        private boolean sampling;
+
+        private Run(Run outer) {
+            this.outer = outer;
+        }
+
+        // called once per element: true for the elements whose stages should measure allocation
+        public boolean sampleAllocation() {
+            sampling = THREADS != null && elements.getAndIncrement() % ALLOCATION_SAMPLE_PERIOD == 0;
+            return sampling;
+        }
+
+        public void finish() {
+            if (outer == null) {
+                currentRun.remove();
+            } else {
+                currentRun.set(outer);
+            }
+            pipeline.runs.increment();
+            pipeline.allocatedBytes.add(allocatedBytes() - startBytes);
+        }
+    }
+
+    private class Pipeline implements PipelineMXBean {
+        private final LongAdder runs = new LongAdder();
+        private final LongAdder allocatedBytes = new LongAdder();
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        @Override
+        public void setEnabled(boolean enabled) {
+            PipelineMetrics.this.enabled = enabled;
+        }
+
+        @Override
+        public long getRuns() {
+            return runs.sum();
+        }
+
+        @Override
+        public long getAllocatedBytes() {
+            return THREADS == null ? -1 : allocatedBytes.sum();
+        }
+
+        @Override
+        public void reset() {
+            runs.reset();
+            allocatedBytes.reset();
+            synchronized (PipelineMetrics.this) {
+                for (Stage stage : stages) {
+                    if (stage != null) {
+                        stage.reset();
+                    }
+                }
+            }
+        }
+    }
+
+    public static class Stage implements StageMXBean {
+        private final String name;
+        private final LongAdder in = new LongAdder();
+        private final LongAdder out = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        private final Histogram histogram = new Histogram();
+        private final LongAdder sampledElements = new LongAdder();
+        private final LongAdder sampledBytes = new LongAdder();
+
+        private Stage(String name) {
+            this.name = name;
+        }
+
+        public void record(long elapsedNanos, boolean passed) {
+            in.increment();
+            if (passed) {
+                out.increment();
+            }
+            nanos.add(elapsedNanos);
+            histogram.record(elapsedNanos);
+        }
+
+        public void recordAllocation(long bytes) {
+            sampledElements.increment();
+            sampledBytes.add(bytes);
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public long getElementsIn() {
+            return in.sum();
+        }
+
+        @Override
+        public long getElementsOut() {
+            return out.sum();
+        }
+
+        @Override
+        public double getSelectivity() {
+            final long in = getElementsIn();
+            return in == 0 ? 1.0 : (double) getElementsOut() / in;
+        }
+
+        @Override
+        public long getTotalNanos() {
+            return nanos.sum();
+        }
+
+        @Override
+        public double getMeanNanos() {
+            final long in = getElementsIn();
+            return in == 0 ? 0 : (double) getTotalNanos() / in;
+        }
+
+        @Override
+        public long getP50Nanos() {
+            return histogram.percentile(0.5);
+        }
+
+        @Override
+        public long getP90Nanos() {
+            return histogram.percentile(0.9);
+        }
+
+        @Override
+        public long getP99Nanos() {
+            return histogram.percentile(0.99);
+        }
+
+        @Override
+        public long getMaxNanos() {
+            return histogram.max();
+        }
+
+        @Override
+        public long getAllocatedBytesEstimate() {
+            if (THREADS == null) {
+                return -1;
+            }
+            final long samples = sampledElements.sum();
+            return samples == 0 ? 0 : sampledBytes.sum() * getElementsIn() / samples;
+        }
+
+        @Override
+        public void reset() {
+            in.reset();
+            out.reset();
+            nanos.reset();
+            histogram.reset();
+            sampledElements.reset();
+            sampledBytes.reset();
+        }
+    }
+
+    // Log-linear buckets: 0..7 exactly, then 8 buckets per power of two, so a percentile is within 12.5%
+    private static class Histogram {
+        private static final int SUB_BUCKETS = 8;
+        private static final int SUB_BITS = 3;
+
+        private final AtomicLongArray counts = new AtomicLongArray(index(Long.MAX_VALUE) + 1);
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        private void record(long value) {
+            final long v = Math.max(0, value);
+            counts.incrementAndGet(index(v));
+            max.accumulate(v);
+        }
+
+        // upper bound of the bucket holding the p-th value
+        private long percentile(double p) {
+            long total = 0;
+            for (int i = 0; i < counts.length(); i++) {
+                total += counts.get(i);
+            }
+            if (total == 0) {
+                return 0;
+            }
+
+            final long rank = Math.max(1, (long) Math.ceil(p * total));
+            long seen = 0;
+            for (int i = 0; i < counts.length(); i++) {
+                seen += counts.get(i);
+                if (seen >= rank) {
+                    return Math.min(upperBound(i), max.get());
+                }
+            }
+            return max.get();
+        }
+
+        private long max() {
+            return max.get();
+        }
+
+        private void reset() {
+            for (int i = 0; i < counts.length(); i++) {
+                counts.set(i, 0);
+            }
+            max.reset();
+        }
+
+        private static int index(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            final int exponent = 63 - Long.numberOfLeadingZeros(value);
+            final int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+            return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+        }
+
+        private static long upperBound(int index) {
+            if (index < SUB_BUCKETS - 1) {
+                return index;
+            }
+            final int next = index + 1;
+            final int exponent = next / SUB_BUCKETS + SUB_BITS - 1;
+            final long lower = (long) (SUB_BUCKETS + next % SUB_BUCKETS) << (exponent - SUB_BITS);
+            return lower - 1;
+        }
+    }
+
+    private static <T> void register(ObjectName objectName, T bean, Class<T> type) {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(new StandardMBean(bean, type, true), objectName);
+        } catch (JMException e) {
+            throw new IllegalStateException("cannot register " + objectName, e);
+        }
+    }
+
+    private static ObjectName pipelineName(String pipeline) {
+        return objectName("type=Pipeline,name=" + ObjectName.quote(pipeline));
+    }
+
+    private static ObjectName stageName(String pipeline, String stage) {
+        return objectName("type=Stage,pipeline=" + ObjectName.quote(pipeline) + ",name=" + ObjectName.quote(stage));
+    }
+
+    private static ObjectName objectName(String properties) {
+        try {
+            return new ObjectName(DOMAIN + ":" + properties);
+        } catch (JMException e) {
+            throw new IllegalArgumentException(properties, e);
+        }
+    }
+
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        final java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            final com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean) threads;
+            if (counter.isThreadAllocatedMemorySupported() && counter.isThreadAllocatedMemoryEnabled()) {
+                return counter;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,74 @@
+package lambda.part3.example;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Function;
+
+// Cuts a list in chunks of threshold elements, evaluates the chunks in parallel, every chunk sequentially,
+// and concatenates the chunk results once, in encounter order
+public class RangeTask<T, R> extends RecursiveTask<List<R>> {
+    private static final long serialVersionUID = 1L;
+    public static final int DEFAULT_THRESHOLD = 1 << 12;
+
+    private final List<T> list;
+    private final int threshold;
+    private final Function<List<T>, List<R>> rangeFunction;
+
+    public RangeTask(List<T> list, int threshold, Function<List<T>, List<R>> rangeFunction) {
+        if (threshold < 1) {
+            throw new IllegalArgumentException("threshold must be positive: " + threshold);
+        }
+        this.list = list;
+        this.threshold = threshold;
+        this.rangeFunction = rangeFunction;
+    }
+
+    @Override
+    protected List<R> compute() {
+        final int size = list.size();
+        final int chunks = size == 0 ? 1 : (size - 1) / threshold + 1;
+        // every chunk writes its own slot, join() publishes the writes
+        final List<List<R>> results = new ArrayList<>(Collections.<List<R>>nCopies(chunks, null));
+        new Chunks(results, 0, chunks).invoke();
+
+        int total = 0;
+        for (List<R> chunk : results) {
+            total += chunk.size();
+        }
+        final List<R> result = new ArrayList<>(total);
+        for (List<R> chunk : results) {
+            result.addAll(chunk);
+        }
+        return result;
+    }
+
+    // chunks [from, to), split in halves down to one chunk
+    private class Chunks extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<List<R>> results;
+        private final int from;
+        private final int to;
+
+        private Chunks(List<List<R>> results, int from, int to) {
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                final int start = from * threshold;
+                results.set(from, rangeFunction.apply(list.subList(start, Math.min(start + threshold, list.size()))));
+                return;
+            }
+
+            final int middle = (from + to) >>> 1;
+            invokeAll(new Chunks(results, from, middle), new Chunks(results, middle, to));
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package lambda.part3.example;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+// The first k elements of the sorted order: a max-heap of at most k elements, O(n log k) time, O(k) memory.
+// Equal elements keep their offer order, as with a stable sort.
+public class TopK<T> {
+    private final int k;
+    private final Comparator<? super T> comparator;
+    private final Comparator<Ranked<T>> order;
+    private final PriorityQueue<Ranked<T>> heap;
+    private long offered;
+
+    public TopK(int k, Comparator<? super T> comparator) {
+        if (k < 0) {
+            throw new IllegalArgumentException("k must not be negative: " + k);
+        }
+        this.k = k;
+        this.comparator = comparator;
+        this.order = Comparator.<Ranked<T>, T>comparing(r -> r.value, comparator)
+                .thenComparingLong(r -> r.sequence);
+        this.heap = new PriorityQueue<>(Math.max(1, Math.min(k, 1 << 10)), order.reversed());
+    }
+
+    // a later value ranks after an equal one, so only a strictly smaller one replaces the head,
+    // and a rejected value is not wrapped
+    public void offer(T value) {
+        final long sequence = offered++;
+        if (heap.size() < k) {
+            heap.add(new Ranked<>(value, sequence));
+        } else if (k > 0 && comparator.compare(value, heap.peek().value) < 0) {
+            heap.poll();
+            heap.add(new Ranked<>(value, sequence));
+        }
+    }
+
+    public List<T> result() {
+        final List<Ranked<T>> ranked = new ArrayList<>(heap);
+        ranked.sort(order);
+
+        final List<T> result = new ArrayList<>(ranked.size());
+        for (Ranked<T> r : ranked) {
+            result.add(r.value);
+        }
+        return result;
+    }
+
+    private static class Ranked<T> {
+        private final T value;
+        private final long sequence;
+
+        private Ranked(T value, long sequence) {
+            this.value = value;
+            this.sequence = sequence;
+        }
+    }
+}
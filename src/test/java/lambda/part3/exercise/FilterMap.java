@@ -1,9 +1,53 @@
 package lambda.part3.exercise;
 
+import data.Employee;
+import data.EmployeeCsvSource;
+import data.EmployeeTable;
+import data.JobHistoryEntry;
+import data.OffHeapEmployeeStore;
+import data.OffHeapEmployeeStore.EmployeeView;
+import data.Person;
+import lambda.part3.example.LiveView;
+import lambda.part3.example.PipelineMetrics;
+import lambda.part3.example.RangeTask;
+import lambda.part3.example.TopK;
+import lambda.part3.exercise.PrimitiveFilterMap.DoubleLazyCollection;
+import lambda.part3.exercise.PrimitiveFilterMap.IntLazyCollection;
+import lambda.part3.exercise.PrimitiveFilterMap.LongLazyCollection;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.management.Attribute;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.IntConsumer;
 import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class FilterMap {
 
@@ -30,33 +74,604 @@ public class FilterMap {
         }
     }
 
+    private static final Object DROPPED = new Object();
+
     public static class LazyCollectionHelper<T> {
         private final List<Container<Object, Object>> actions;
-        private final List<T> list;
+        private final Iterable<T> list;
+        // null if not instrumented
+        private final PipelineMetrics metrics;
+
+        // any Iterable works as a lazy source, force(pool) splits Lists only
+        public LazyCollectionHelper(Iterable<T> list, List<Container<Object, Object>> actions) {
+            this(list, actions, null);
+        }
 
-        public LazyCollectionHelper(List<T> list, List<Container<Object, Object>> actions) {
+        private LazyCollectionHelper(Iterable<T> list, List<Container<Object, Object>> actions, PipelineMetrics metrics) {
             this.actions = actions;
             this.list = list;
+            this.metrics = metrics;
         }
 
-        public LazyCollectionHelper(List<T> list) {
+        public LazyCollectionHelper(Iterable<T> list) {
             this(list, new ArrayList<>());
         }
 
-        public LazyCollectionHelper<T> filter(Predicate<T> condition) {
+        public LazyCollectionHelper<T> filter(Predicate<? super T> condition) {
+            final Predicate<Object> stage = cast(condition);
             List<Container<Object, Object>> newActions = new ArrayList<>(actions);
-            newActions.add(new Container<>((Predicate<Object>) condition));
-            return new LazyCollectionHelper<>(list, newActions);
+            newActions.add(new Container<>(stage));
+            return new LazyCollectionHelper<>(list, newActions, metrics);
         }
 
         public <R> LazyCollectionHelper<R> map(Function<T, R> function) {
-            // TODO
-            throw new UnsupportedOperationException();
+            final Function<Object, Object> stage = cast(function);
+            List<Container<Object, Object>> newActions = new ArrayList<>(actions);
+            newActions.add(new Container<>(stage));
+            return new LazyCollectionHelper<R>(cast(list), newActions, metrics);
         }
 
+        // Single pass: every element goes through the whole chain, only the result list is allocated
         public List<T> force() {
-            // TODO
-            throw new UnsupportedOperationException();
+            final List<T> result = new ArrayList<>();
+            forEach(result::add);
+            return result;
+        }
+
+        // A pipeline kept up to date with the changes of source, see LivePipeline
+        public static <S> LivePipeline<S, S> over(LiveView.Source<S> source) {
+            return new LivePipeline<>(source, new LazyCollectionHelper<>(source));
+        }
+
+        // Stages of forEach based terminals, including stages added after this call,
+        // are recorded under the pipeline name while it is enabled
+        public LazyCollectionHelper<T> instrument(String pipeline) {
+            return new LazyCollectionHelper<>(list, actions, PipelineMetrics.of(pipeline));
+        }
+
+        public void forEach(Consumer<T> action) {
+            if (metrics != null && metrics.isEnabled()) {
+                pull(t -> {
+                    action.accept(t);
+                    return true;
+                });
+                return;
+            }
+
+            for (Object element : list) {
+                final Object value = apply(element);
+                if (value != DROPPED) {
+                    action.accept(cast(value));
+                }
+            }
+        }
+
+        // The terminals below stop pulling from the source as soon as the answer is known
+
+        // the first non-null result: Optional cannot hold null, so null results are skipped (as by live())
+        public Optional<T> findFirst() {
+            final Object[] first = {null};
+            pull(t -> {
+                first[0] = t;
+                return t == null;
+            });
+            return Optional.ofNullable(LazyCollectionHelper.<T>cast(first[0]));
+        }
+
+        // condition is not a stage of the pipeline, it is not recorded
+        public boolean anyMatch(Predicate<T> condition) {
+            final boolean[] found = {false};
+            pull(t -> {
+                found[0] = condition.test(t);
+                return !found[0];
+            });
+            return found[0];
+        }
+
+        public List<T> limit(int n) {
+            final List<T> result = new ArrayList<>();
+            if (n > 0) {
+                pull(t -> {
+                    result.add(t);
+                    return result.size() < n;
+                });
+            }
+            return result;
+        }
+
+        // force(), sorted, first n; reads the whole source but keeps only n elements
+        public List<T> topK(int n, Comparator<? super T> comparator) {
+            final TopK<T> top = new TopK<>(n, comparator);
+            if (n > 0) {
+                forEach(top::offer);
+            }
+            return top.result();
+        }
+
+        public IntLazyCollection<T> mapToInt(ToIntFunction<T> function) {
+            return new IntLazyCollection<>(this, function);
+        }
+
+        // the function pushes any number of values of one element to the sink, without boxing them
+        public IntLazyCollection<T> flatMapToInt(BiConsumer<T, IntConsumer> function) {
+            return new IntLazyCollection<>(this, function);
+        }
+
+        public LongLazyCollection<T> mapToLong(ToLongFunction<T> function) {
+            return new LongLazyCollection<>(this, function);
+        }
+
+        public DoubleLazyCollection<T> mapToDouble(ToDoubleFunction<T> function) {
+            return new DoubleLazyCollection<>(this, function);
+        }
+
+        public List<T> force(ForkJoinPool pool) {
+            return force(pool, RangeTask.DEFAULT_THRESHOLD);
+        }
+
+        // Sources other than List run sequentially: they are read in one pass anyway
+        // and may reuse their elements (OffHeapEmployeeStore views), so they can not be cut in chunks
+        public List<T> force(ForkJoinPool pool, int threshold) {
+            if (!(list instanceof List)) {
+                return force();
+            }
+
+            final List<T> source = cast(list);
+            if (metrics == null || !metrics.isEnabled()) {
+                return pool.invoke(new RangeTask<T, T>(source, threshold,
+                        range -> new LazyCollectionHelper<T>(range, actions).force()));
+            }
+
+            // one run for all chunks
+            final PipelineMetrics.Stage[] stages = stages();
+            final PipelineMetrics.Run run = metrics.startRun();
+            try {
+                return pool.invoke(new RangeTask<T, T>(source, threshold, range -> {
+                    final List<T> result = new ArrayList<>();
+                    new LazyCollectionHelper<T>(range, actions, metrics).pull(stages, run, result::add);
+                    return result;
+                }));
+            } finally {
+                run.finish();
+            }
+        }
+
+        // Results go to consumer until it returns false; one run of the pipeline while metrics are enabled
+        private void pull(Predicate<T> consumer) {
+            if (metrics == null || !metrics.isEnabled()) {
+                for (Object element : list) {
+                    final Object value = apply(element);
+                    if (value != DROPPED && !consumer.test(cast(value))) {
+                        return;
+                    }
+                }
+                return;
+            }
+
+            final PipelineMetrics.Stage[] stages = stages();
+            final PipelineMetrics.Run run = metrics.startRun();
+            try {
+                pull(stages, run, consumer);
+            } finally {
+                run.finish();
+            }
+        }
+
+        private void pull(PipelineMetrics.Stage[] stages, PipelineMetrics.Run run, Predicate<T> consumer) {
+            for (Object element : list) {
+                final Object value = apply(element, stages, run.sampleAllocation());
+                if (value != DROPPED && !consumer.test(cast(value))) {
+                    return;
+                }
+            }
+        }
+
+        private PipelineMetrics.Stage[] stages() {
+            final PipelineMetrics.Stage[] stages = new PipelineMetrics.Stage[actions.size()];
+            for (int i = 0; i < stages.length; i++) {
+                stages[i] = metrics.stage(i, actions.get(i).getPredicate() != null ? "filter" : "map");
+            }
+            return stages;
+        }
+
+        // apply(element), timing every stage
+        private Object apply(Object element, PipelineMetrics.Stage[] stages, boolean sampleAllocation) {
+            Object value = element;
+            for (int i = 0; i < stages.length; i++) {
+                final Container<Object, Object> action = actions.get(i);
+                final long bytes = sampleAllocation ? PipelineMetrics.allocatedBytes() : 0;
+                final long start = System.nanoTime();
+                final Predicate<Object> predicate = action.getPredicate();
+                boolean passed = true;
+                if (predicate != null) {
+                    passed = predicate.test(value);
+                } else {
+                    value = action.getFunction().apply(value);
+                }
+                stages[i].record(System.nanoTime() - start, passed);
+                if (sampleAllocation) {
+                    stages[i].recordAllocation(PipelineMetrics.allocatedBytes() - bytes);
+                }
+                if (!passed) {
+                    return DROPPED;
+                }
+            }
+
+            return value;
+        }
+
+        // Stages are stored untyped, the only place where a value gets a static type back
+        @SuppressWarnings("unchecked")
+        private static <A> A cast(Object value) {
+            return (A) value;
+        }
+
+        // Object -> T | DROPPED
+        private Object apply(Object element) {
+            Object value = element;
+            for (Container<Object, Object> action : actions) {
+                final Predicate<Object> predicate = action.getPredicate();
+                if (predicate != null) {
+                    if (!predicate.test(value)) {
+                        return DROPPED;
+                    }
+                } else {
+                    value = action.getFunction().apply(value);
+                }
+            }
+
+            return value;
+        }
+    }
+
+    // The stages of LazyCollectionHelper over a LiveView.Source, typed by the source elements S;
+    // as with findFirst, a null result counts as absent
+    public static class LivePipeline<S, T> {
+        private final LiveView.Source<S> source;
+        private final LazyCollectionHelper<T> stages;
+
+        private LivePipeline(LiveView.Source<S> source, LazyCollectionHelper<T> stages) {
+            this.source = source;
+            this.stages = stages;
+        }
+
+        public LivePipeline<S, T> filter(Predicate<? super T> condition) {
+            return new LivePipeline<>(source, stages.filter(condition));
+        }
+
+        public <R> LivePipeline<S, R> map(Function<T, R> function) {
+            return new LivePipeline<>(source, stages.map(function));
+        }
+
+        public LiveView<T> live() {
+            return LiveView.of(source, element -> {
+                final Object value = stages.apply(element);
+                return value == DROPPED ? Optional.empty() : Optional.ofNullable(LazyCollectionHelper.<T>cast(value));
+            });
         }
     }
+
+    @Test
+    public void lazy_filter_map() {
+        final List<Employee> employees =
+                Arrays.asList(
+                        new Employee(
+                                new Person("a", "Galt", 30),
+                                Arrays.asList(
+                                        new JobHistoryEntry(2, "dev", "epam"),
+                                        new JobHistoryEntry(1, "dev", "google")
+                                )),
+                        new Employee(
+                                new Person("b", "Doe", 40),
+                                Arrays.asList(
+                                        new JobHistoryEntry(3, "qa", "yandex"),
+                                        new JobHistoryEntry(1, "qa", "epam"),
+                                        new JobHistoryEntry(1, "dev", "abc")
+                                )),
+                        new Employee(
+                                new Person("c", "White", 50),
+                                Collections.singletonList(
+                                        new JobHistoryEntry(5, "qa", "epam")
+                                ))
+                );
+
+        final List<String> lastNames = new LazyCollectionHelper<>(employees)
+                .filter(e -> e.getJobHistory().size() > 1)
+                .map(Employee::getPerson)
+                .filter(p -> p.getAge() > 30)
+                .map(Person::getLastName)
+                .force();
+
+        assertEquals(Collections.singletonList("Doe"), lastNames);
+    }
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void lazy_file_source() throws IOException {
+        final Path file = folder.newFile("employees.csv").toPath();
+        Files.write(file, Arrays.asList(
+                "a,Galt,30,2|dev|epam;1|dev|google",
+                "b,Doe,40,3|qa|yandex;1|qa|epam;1|dev|abc",
+                "c,White,50,5|qa|epam",
+                "d,Black,20,"
+        ), StandardCharsets.UTF_8);
+
+        // small window, so records cross window boundaries
+        final List<String> lastNames = new LazyCollectionHelper<>(new EmployeeCsvSource(file, 48))
+                .filter(e -> e.getJobHistory().size() > 1)
+                .map(Employee::getPerson)
+                .filter(p -> p.getAge() > 30)
+                .map(Person::getLastName)
+                .force();
+
+        assertEquals(Collections.singletonList("Doe"), lastNames);
+
+        final List<Employee> all = new LazyCollectionHelper<>(new EmployeeCsvSource(file, 48)).force();
+        assertEquals(4, all.size());
+        assertEquals(new Employee(new Person("d", "Black", 20), Collections.emptyList()), all.get(3));
+        assertEquals(
+                Arrays.asList(new JobHistoryEntry(3, "qa", "yandex"), new JobHistoryEntry(1, "qa", "epam"), new JobHistoryEntry(1, "dev", "abc")),
+                all.get(1).getJobHistory());
+        final EmployeeTable table = new EmployeeCsvSource(file).toTable();
+        assertEquals(all, table.employees(table.rows(row -> true)));
+    }
+
+    @Test
+    public void file_source_rejects_malformed_numbers() throws IOException {
+        assertParseError("line 2: empty number", "a,Galt,30,2|dev|epam", "b,Doe,-,1|qa|epam");
+        assertParseError("line 1: number out of int range", "a,Galt,2147483648,");
+        assertParseError("line 3: not a number", "a,Galt,30,", "", "c,White,50,5x|qa|epam");
+        assertEquals(Integer.MIN_VALUE, firstAge("a,Galt,-2147483648,"));
+    }
+
+    private void assertParseError(String expected, String... lines) throws IOException {
+        final Path file = folder.newFile().toPath();
+        Files.write(file, Arrays.asList(lines), StandardCharsets.UTF_8);
+        try {
+            new LazyCollectionHelper<>(new EmployeeCsvSource(file)).force();
+            fail("parsed " + Arrays.toString(lines));
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith(expected));
+        }
+    }
+
+    private int firstAge(String line) throws IOException {
+        final Path file = folder.newFile().toPath();
+        Files.write(file, Collections.singletonList(line), StandardCharsets.UTF_8);
+        return new EmployeeCsvSource(file).iterator().next().getPerson().getAge();
+    }
+
+    @Test
+    public void lazy_off_heap_source() {
+        final List<Employee> employees =
+                Arrays.asList(
+                        new Employee(
+                                new Person("John", "Galt", 30),
+                                Arrays.asList(
+                                        new JobHistoryEntry(2, "dev", "epam"),
+                                        new JobHistoryEntry(1, "dev", "google")
+                                )),
+                        new Employee(
+                                new Person("John", "Doe", 40),
+                                Arrays.asList(
+                                        new JobHistoryEntry(3, "qa", "yandex"),
+                                        new JobHistoryEntry(1, "qa", "epam"),
+                                        new JobHistoryEntry(1, "dev", "abc")
+                                )),
+                        new Employee(
+                                new Person("Bob", "White", 50),
+                                Collections.emptyList())
+                );
+        final OffHeapEmployeeStore store = OffHeapEmployeeStore.of(employees);
+
+        assertEquals(3, store.size());
+        assertEquals(employees, store.toList());
+
+        // the lambdas of Filtering.filtering, only the element type differs
+        final List<String> lastNames = new LazyCollectionHelper<>(store)
+                .filter(e -> e.getPerson().getFirstName().equals("John"))
+                .filter(e -> e.anyJob(j -> j.getPosition().equals("dev")))
+                .filter(e -> e.anyJob(j -> j.getEmployer().equals("epam") && j.getDuration() > 1))
+                .map(e -> e.getPerson().getLastName())
+                .force();
+
+        assertEquals(Collections.singletonList("Galt"), lastNames);
+
+        final Predicate<OffHeapEmployeeStore.JobView> qaInEpam = store.positionIs("qa").and(store.employerIs("epam"));
+        final List<Person> qa = new LazyCollectionHelper<>(store)
+                .filter(e -> e.anyJob(qaInEpam))
+                .map((EmployeeView e) -> e.getPerson().toPerson())
+                .force();
+
+        assertEquals(Collections.singletonList(new Person("John", "Doe", 40)), qa);
+    }
+
+    @Test
+    public void lazy_table_source() {
+        final List<Employee> employees =
+                Arrays.asList(
+                        new Employee(
+                                new Person("John", "Galt", 30),
+                                Arrays.asList(
+                                        new JobHistoryEntry(2, "dev", "epam"),
+                                        new JobHistoryEntry(1, "dev", "google")
+                                )),
+                        new Employee(
+                                new Person("John", "Doe", 40),
+                                Arrays.asList(
+                                        new JobHistoryEntry(3, "qa", "yandex"),
+                                        new JobHistoryEntry(1, "qa", "epam"),
+                                        new JobHistoryEntry(1, "dev", "abc")
+                                )),
+                        new Employee(
+                                new Person("Bob", "White", 50),
+                                Collections.emptyList())
+                );
+        final EmployeeTable table = EmployeeTable.of(employees);
+
+        // the lambdas of lazy_off_heap_source, over the columns of the table
+        final List<String> lastNames = new LazyCollectionHelper<>(table)
+                .filter(e -> e.getPerson().getFirstName().equals("John"))
+                .filter(e -> e.anyJob(j -> j.getPosition().equals("dev")))
+                .filter(e -> e.anyJob(j -> j.getEmployer().equals("epam") && j.getDuration() > 1))
+                .map(e -> e.getPerson().getLastName())
+                .force();
+
+        assertEquals(Collections.singletonList("Galt"), lastNames);
+
+        final Predicate<EmployeeTable.JobView> qaInEpam = table.positionIs("qa").and(table.employerIs("epam"));
+        final List<Person> qa = new LazyCollectionHelper<>(table)
+                .filter(e -> e.anyJob(qaInEpam))
+                .map((EmployeeTable.EmployeeView e) -> e.getPerson().toPerson())
+                .force();
+
+        assertEquals(Collections.singletonList(new Person("John", "Doe", 40)), qa);
+        assertEquals(0, new LazyCollectionHelper<>(table).filter(e -> e.anyJob(table.employerIs("nowhere"))).force().size());
+
+        // one view for all rows, copied out with toEmployee()
+        final List<EmployeeTable.EmployeeView> views = new LazyCollectionHelper<>(table).force();
+        assertEquals(3, views.size());
+        assertSame(views.get(0), views.get(2));
+        assertEquals(employees, new LazyCollectionHelper<>(table).map(EmployeeTable.EmployeeView::toEmployee).force());
+        assertEquals(5, new LazyCollectionHelper<>(table).mapToInt(EmployeeTable.EmployeeView::getJobCount).sum());
+    }
+
+    @Test
+    public void instrumented_lazy_filter_map() throws JMException {
+        final List<Person> persons = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            persons.add(new Person("name " + i, "lastName " + i, i % 100));
+        }
+
+        final LazyCollectionHelper<String> names = new LazyCollectionHelper<>(persons)
+                .instrument("FilterMap.instrumented")
+                .filter(p -> p.getAge() >= 50)
+                .map(Person::getFirstName)
+                .filter(n -> n.endsWith("0"));
+        final PipelineMetrics metrics = PipelineMetrics.of("FilterMap.instrumented");
+        try {
+            assertEquals(50, names.force().size());
+
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName filter = new ObjectName("lambda.pipeline:type=Stage,pipeline=\"FilterMap.instrumented\",name=\"0-filter\"");
+            final ObjectName map = new ObjectName("lambda.pipeline:type=Stage,pipeline=\"FilterMap.instrumented\",name=\"1-map\"");
+            assertEquals(1000L, server.getAttribute(filter, "ElementsIn"));
+            assertEquals(500L, server.getAttribute(filter, "ElementsOut"));
+            assertEquals(500L, server.getAttribute(map, "ElementsOut"));
+            assertEquals(0.1, metrics.stage(2, "filter").getSelectivity(), 0.0001);
+            assertEquals(1L, server.getAttribute(new ObjectName("lambda.pipeline:type=Pipeline,name=\"FilterMap.instrumented\""), "Runs"));
+
+            // switched off: the plain loop, nothing recorded
+            server.setAttribute(new ObjectName("lambda.pipeline:type=Pipeline,name=\"FilterMap.instrumented\""),
+                    new Attribute("Enabled", false));
+            assertEquals(50, names.force().size());
+            assertEquals(1000L, server.getAttribute(filter, "ElementsIn"));
+            assertEquals(1, metrics.getRuns());
+
+            // one run per terminal call, however many chunks it is cut in
+            server.setAttribute(new ObjectName("lambda.pipeline:type=Pipeline,name=\"FilterMap.instrumented\""),
+                    new Attribute("Enabled", true));
+            final ForkJoinPool pool = new ForkJoinPool(4);
+            try {
+                assertEquals(50, names.force(pool, 16).size());
+            } finally {
+                pool.shutdown();
+            }
+            assertEquals(true, names.anyMatch(n -> n.equals("name 50")));
+            assertEquals(3, metrics.getRuns());
+            // anyMatch stops after person 50
+            assertEquals(2051L, server.getAttribute(filter, "ElementsIn"));
+        } finally {
+            metrics.unregister();
+        }
+    }
+
+    @Test
+    public void live_filter_map() {
+        final LiveView.Source<Person> persons = new LiveView.Source<>();
+        final long galt = persons.add(new Person("John", "Galt", 30));
+        persons.add(new Person("Bob", "Doe", 40));
+        final long white = persons.add(new Person("John", "White", 50));
+
+        final LiveView<String> johns = LazyCollectionHelper.over(persons)
+                .filter(p -> p.getFirstName().equals("John"))
+                .map(Person::getLastName)
+                .live();
+        assertEquals(Arrays.asList("Galt", "White"), johns.toList());
+
+        persons.update(galt, p -> p.withLastName("Black"));
+        persons.remove(white);
+        persons.add(new Person("John", "Doe", 20));
+        assertEquals(Arrays.asList("Black", "Doe"), johns.toList());
+
+        // a throwing pipeline rejects the change, the source and the other views stay unchanged
+        final LiveView<Integer> ages = LazyCollectionHelper.over(persons)
+                .map(p -> p.getLastName().length() > 0 ? p.getAge() : 100 / p.getLastName().length())
+                .live();
+        try {
+            persons.add(new Person("John", "", 20));
+            fail();
+        } catch (ArithmeticException e) {
+            assertEquals(3, persons.size());
+            assertEquals(Arrays.asList("Black", "Doe"), johns.toList());
+            assertEquals(Arrays.asList(30, 40, 20), ages.toList());
+        }
+    }
+
+    @Test
+    public void parallel_lazy_filter_map() {
+        final List<Person> persons = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            persons.add(new Person("name " + i, "lastName " + i, i % 70));
+        }
+
+        final LazyCollectionHelper<String> names = new LazyCollectionHelper<>(persons)
+                .filter(p -> p.getAge() > 30)
+                .map(Person::getFirstName);
+
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertEquals(names.force(), names.force(pool, 16));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void lazy_short_circuit() {
+        final List<Person> persons = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            persons.add(new Person("name " + i, "lastName " + i, i % 70));
+        }
+
+        final int[] pulled = {0};
+        final LazyCollectionHelper<Person> adults = new LazyCollectionHelper<>(persons)
+                .map(p -> {
+                    pulled[0]++;
+                    return p;
+                })
+                .filter(p -> p.getAge() >= 18);
+
+        assertEquals("name 18", adults.map(Person::getFirstName).findFirst().get());
+        assertEquals(19, pulled[0]);
+
+        pulled[0] = 0;
+        assertEquals(true, adults.anyMatch(p -> p.getAge() == 20));
+        assertEquals(21, pulled[0]);
+
+        pulled[0] = 0;
+        assertEquals(Arrays.asList("name 18", "name 19", "name 20"), adults.map(Person::getFirstName).limit(3));
+        assertEquals(21, pulled[0]);
+
+        assertEquals(Optional.empty(), adults.filter(p -> p.getAge() > 100).findFirst());
+        assertEquals("name 19", adults.map(p -> p.getAge() == 18 ? null : p.getFirstName()).findFirst().get());
+        assertEquals(Collections.emptyList(), adults.limit(0));
+
+        // oldest first, equal ages in source order
+        final List<String> oldest = adults.topK(3, Comparator.comparingInt(Person::getAge).reversed())
+                .stream().map(Person::getFirstName).collect(Collectors.toList());
+        assertEquals(Arrays.asList("name 69", "name 139", "name 209"), oldest);
+    }
 }
@@ -2,23 +2,36 @@ package lambda.part3.exercise;
 
 import data.Employee;
 import data.JobHistoryEntry;
+import data.PersistentList;
 import data.Person;
 import org.junit.Test;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class Mapping {
 
-    private static class MapHelper<T> {
+    public static class MapHelper<T> {
         private final List<T> list;
 
         public MapHelper(List<T> list) {
@@ -32,8 +45,12 @@ public class Mapping {
         // [T] -> (T -> R) -> [R]
         // [T1, T2, T3] -> (T -> R) -> [R1, R2, R3]
         public <R> MapHelper<R> map(Function<T, R> f) {
-            // TODO
-            throw new UnsupportedOperationException();
+            final List<R> result = new ArrayList<R>();
+            list.forEach((T t) ->
+                    result.add(f.apply(t))
+            );
+
+            return new MapHelper<R>(result);
         }
 
         // [T] -> (T -> [R]) -> [R]
@@ -48,6 +65,60 @@ public class Mapping {
 
             return new MapHelper<R>(result);
         }
+
+        // (T, R -> ()) -> [R]: no List per element
+        public <R> MapHelper<R> flatMap(BiConsumer<T, Consumer<R>> f) {
+            final List<R> result = new ArrayList<R>();
+            final Consumer<R> sink = result::add;
+            list.forEach((T t) ->
+                    f.accept(t, sink)
+            );
+
+            return new MapHelper<R>(result);
+        }
+
+        // [T] -> (T -> future R) -> [R]
+        // At most maxInFlight results are started and not yet collected; results are collected in list order,
+        // so a slow element holds back the start of new calls but never reorders the output.
+        public <R> MapHelper<R> mapAsync(Function<T, CompletableFuture<R>> f, int maxInFlight) {
+            if (maxInFlight < 1) {
+                throw new IllegalArgumentException("maxInFlight must be positive: " + maxInFlight);
+            }
+
+            final List<R> result = new ArrayList<R>(list.size());
+            final ArrayDeque<CompletableFuture<R>> inFlight = new ArrayDeque<>(maxInFlight);
+            try {
+                for (T t : list) {
+                    if (inFlight.size() == maxInFlight) {
+                        result.add(inFlight.poll().join());
+                    }
+                    inFlight.add(f.apply(t));
+                }
+                while (!inFlight.isEmpty()) {
+                    result.add(inFlight.poll().join());
+                }
+            } catch (RuntimeException e) {
+                // a failed result or a throwing f: the calls already started are not waited for
+                inFlight.forEach(future -> future.cancel(false));
+                throw e;
+            }
+
+            return new MapHelper<R>(result);
+        }
+
+        // [T] -> (T -> R) -> [R], blocking calls run on parallelism threads of a pool created for this call
+        public <R> MapHelper<R> mapBlocking(Function<T, R> f, int parallelism) {
+            final ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+            try {
+                return mapBlocking(f, parallelism, executor);
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        public <R> MapHelper<R> mapBlocking(Function<T, R> f, int parallelism, Executor executor) {
+            return mapAsync(t -> CompletableFuture.supplyAsync(() -> f.apply(t), executor), parallelism);
+        }
     }
 
     @Test
@@ -131,37 +202,56 @@ public class Mapping {
     }
 
     private static class LazyFlatMapHelper<T, R> {
+        // (R -> ()) -> (T -> ()): wraps the downstream sink, built once per force
+        private interface Stages<T, R> {
+            Consumer<T> sink(Consumer<R> downstream);
+        }
+
+        private final List<T> list;
+        private final Stages<T, R> stages;
 
         public LazyFlatMapHelper(List<T> list, Function<T, List<R>> function) {
+            this(list, (Stages<T, R>) down -> t -> function.apply(t).forEach(down));
+        }
+
+        private LazyFlatMapHelper(List<T> list, Stages<T, R> stages) {
+            this.list = list;
+            this.stages = stages;
         }
 
         public static <T> LazyFlatMapHelper<T, T> from(List<T> list) {
-            throw new UnsupportedOperationException();
+            return new LazyFlatMapHelper<T, T>(list, (Consumer<T> down) -> down);
         }
 
         public List<R> force() {
-            // TODO
-            throw new UnsupportedOperationException();
+            final List<R> result = new ArrayList<R>();
+            list.forEach(stages.sink(result::add));
+            return result;
         }
 
-        // TODO filter
         // (T -> boolean) -> (T -> [T])
         // filter: [T1, T2] -> (T -> boolean) -> [T2]
         // flatMap": [T1, T2] -> (T -> [T]) -> [T2]
+        public LazyFlatMapHelper<T, R> filter(Predicate<R> condition) {
+            return flatMap((R r, Consumer<R> down) -> {
+                if (condition.test(r)) {
+                    down.accept(r);
+                }
+            });
+        }
 
+        // R -> R2 pushed as a single child, no singleton list per element
         public <R2> LazyFlatMapHelper<T, R2> map(Function<R, R2> f) {
-            final Function<R, List<R2>> listFunction = rR2TorListR2(f);
-            return flatMap(listFunction);
+            return flatMap((R r, Consumer<R2> down) -> down.accept(f.apply(r)));
         }
 
-        // (R -> R2) -> (R -> [R2])
-        private <R2> Function<R, List<R2>> rR2TorListR2(Function<R, R2> f) {
-            throw new UnsupportedOperationException();
+        public <R2> LazyFlatMapHelper<T, R2> flatMap(Function<R, List<R2>> f) {
+            return flatMap((R r, Consumer<R2> down) -> f.apply(r).forEach(down));
         }
 
-        // TODO *
-        public <R2> LazyFlatMapHelper<T, R2> flatMap(Function<R, List<R2>> f) {
-            throw new UnsupportedOperationException();
+        // (R, R2 -> ()) -> (): children are pushed straight into the downstream sink
+        public <R2> LazyFlatMapHelper<T, R2> flatMap(BiConsumer<R, Consumer<R2>> f) {
+            return new LazyFlatMapHelper<T, R2>(list, (Consumer<R2> down) -> stages.sink(r -> f.accept(r, down)));
         }
     }
 
@@ -224,4 +314,247 @@ public class Mapping {
 
         assertEquals(mappedEmployees, expectedResult);
     }
+
+    @Test
+    public void lazy_flat_mapping() {
+        final List<Employee> employees =
+                Arrays.asList(
+                        new Employee(
+                                new Person("a", "Galt", 30),
+                                Arrays.asList(
+                                        new JobHistoryEntry(2, "dev", "epam"),
+                                        new JobHistoryEntry(1, "dev", "google")
+                                )),
+                        new Employee(
+                                new Person("b", "Doe", 40),
+                                Arrays.asList(
+                                        new JobHistoryEntry(3, "qa", "yandex"),
+                                        new JobHistoryEntry(1, "qa", "epam"),
+                                        new JobHistoryEntry(1, "dev", "abc")
+                                )),
+                        new Employee(
+                                new Person("c", "White", 50),
+                                Collections.singletonList(
+                                        new JobHistoryEntry(5, "qa", "epam")
+                                ))
+                );
+
+        final List<String> employers =
+                LazyFlatMapHelper.from(employees)
+                        .filter(e -> e.getPerson().getAge() > 30)
+                        .flatMap((Employee e, Consumer<JobHistoryEntry> down) -> e.forEachJob(down))
+                        .filter(j -> j.getPosition().equals("qa"))
+                        .map(JobHistoryEntry::getEmployer)
+                        .force();
+
+        assertEquals(Arrays.asList("yandex", "epam", "epam"), employers);
+
+        final List<String> positions = new MapHelper<>(employees)
+                .flatMap((Employee e, Consumer<String> down) -> e.forEachJob(j -> down.accept(j.getPosition())))
+                .getList();
+
+        assertEquals(Arrays.asList("dev", "dev", "qa", "qa", "dev", "qa"), positions);
+
+        final List<JobHistoryEntry> jobs = LazyFlatMapHelper.from(employees)
+                .flatMap(Employee::getJobHistory)
+                .force();
+
+        assertEquals(6, jobs.size());
+    }
+
+    @Test
+    public void transient_mapping() {
+        final List<Employee> employees =
+                Arrays.asList(
+                        new Employee(
+                                new Person("a", "Galt", 30),
+                                Arrays.asList(
+                                        new JobHistoryEntry(2, "dev", "epam"),
+                                        new JobHistoryEntry(1, "dev", "google")
+                                )),
+                        new Employee(
+                                new Person("b", "Doe", 40),
+                                Arrays.asList(
+                                        new JobHistoryEntry(3, "qa", "yandex"),
+                                        new JobHistoryEntry(1, "qa", "epam"),
+                                        new JobHistoryEntry(1, "dev", "abc")
+                                )),
+                        new Employee(
+                                new Person("c", "White", 50),
+                                Collections.singletonList(
+                                        new JobHistoryEntry(5, "qa", "epam")
+                                ))
+                );
+
+        // one scratch builder for the whole pipeline, one Employee allocated per element
+        final Employee.Builder scratch = new Employee.Builder();
+        final List<Employee> mappedEmployees =
+                LazyFlatMapHelper.from(employees)
+                        .map(scratch::from)
+                        .map(b -> b.firstName("John"))
+                        .map(b -> b.updateDurations(d -> d + 1))
+                        .map(b -> b.updatePositions(p -> p.equals("qa") ? "QA" : p))
+                        .map(Employee.Builder::build)
+                        .force();
+
+        final List<Employee> expectedResult =
+                Arrays.asList(
+                        new Employee(
+                                new Person("John", "Galt", 30),
+                                Arrays.asList(
+                                        new JobHistoryEntry(3, "dev", "epam"),
+                                        new JobHistoryEntry(2, "dev", "google")
+                                )),
+                        new Employee(
+                                new Person("John", "Doe", 40),
+                                Arrays.asList(
+                                        new JobHistoryEntry(4, "QA", "yandex"),
+                                        new JobHistoryEntry(2, "QA", "epam"),
+                                        new JobHistoryEntry(2, "dev", "abc")
+                                )),
+                        new Employee(
+                                new Person("John", "White", 50),
+                                Collections.singletonList(
+                                        new JobHistoryEntry(6, "QA", "epam")
+                                ))
+                );
+
+        assertEquals(expectedResult, mappedEmployees);
+
+        // unchanged parts are shared with the source
+        final Employee first = employees.get(0);
+        final Employee renamed = first.toBuilder().firstName("John").build();
+        assertSame(first.getJobHistory(), renamed.getJobHistory());
+        assertSame(first, first.toBuilder().build());
+        // null names and employers are compared, not dereferenced
+        final Employee unnamed = first.toBuilder().lastName(null).updateEmployers(employer -> null).build();
+        assertSame(unnamed, unnamed.toBuilder().build());
+    }
+
+    @Test
+    public void persistent_job_history() {
+        // past the tail and the first trie level
+        final List<JobHistoryEntry> jobs = new ArrayList<>();
+        for (int i = 0; i < 1100; i++) {
+            jobs.add(new JobHistoryEntry(i, "dev", "epam"));
+        }
+        final Employee e = new Employee(new Person("John", "Galt", 30), jobs);
+        assertEquals(jobs, e.getJobHistory());
+        assertEquals(Collections.emptyList(), new Employee(e.getPerson(), null).getJobHistory());
+
+        final JobHistoryEntry qa = new JobHistoryEntry(1, "QA", "yandex");
+        final Employee appended = e.withJobAdded(qa);
+        final Employee updated = e.withJob(40, qa);
+        final List<JobHistoryEntry> expectedAppended = new ArrayList<>(jobs);
+        expectedAppended.add(qa);
+        final List<JobHistoryEntry> expectedUpdated = new ArrayList<>(jobs);
+        expectedUpdated.set(40, qa);
+
+        assertEquals(jobs, e.getJobHistory());
+        assertEquals(expectedAppended, appended.getJobHistory());
+        assertEquals(expectedUpdated, updated.getJobHistory());
+        assertEquals(new Employee(e.getPerson(), expectedUpdated), updated);
+        assertEquals(expectedUpdated.hashCode(), updated.getJobHistory().hashCode());
+
+        // one update rewrites one path, at most one update in the builder patches the source too
+        final Employee built = e.toBuilder().addJob(1, "QA", "yandex").build();
+        assertEquals(appended, built);
+        assertNotSame(e.getJobHistory(), built.getJobHistory());
+
+        try {
+            e.getJobHistory().add(qa);
+            fail("history is read-only");
+        } catch (UnsupportedOperationException expected) {
+        }
+
+        PersistentList<Integer> list = PersistentList.empty();
+        final List<Integer> reference = new ArrayList<>();
+        for (int i = 0; i < 40_000; i++) {
+            list = list.plus(i);
+            reference.add(i);
+        }
+        for (int i = 0; i < reference.size(); i += 997) {
+            list = list.with(i, -i);
+            reference.set(i, -i);
+        }
+        assertEquals(reference, list);
+        assertEquals(reference, PersistentList.copyOf(reference));
+        final PersistentList.Builder<Integer> builder = new PersistentList.Builder<>();
+        reference.forEach(builder::add);
+        final PersistentList<Integer> fromBuilder = builder.build().plus(-1);
+        reference.add(-1);
+        assertEquals(reference, fromBuilder);
+        assertEquals(reference.get(33_000), list.get(33_000));
+    }
+
+    @Test
+    public void async_mapping() throws InterruptedException {
+        final List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            ids.add(i);
+        }
+
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            // later calls complete first, the output order is the list order
+            final List<String> employers = new MapHelper<>(ids)
+                    .mapAsync(id -> CompletableFuture.supplyAsync(() -> {
+                        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                        sleep(40 - id);
+                        running.decrementAndGet();
+                        return "employer " + id;
+                    }, executor), 3)
+                    .getList();
+
+            assertEquals(new MapHelper<>(ids).map(id -> "employer " + id).getList(), employers);
+            assertEquals(true, maxRunning.get() <= 3);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // fails with a timeout unless two calls overlap
+        final CountDownLatch overlap = new CountDownLatch(2);
+        final List<String> normalized = new MapHelper<>(Arrays.asList("EPAM", "Google", "Yandex"))
+                .mapBlocking(employer -> {
+                    overlap.countDown();
+                    try {
+                        if (!overlap.await(10, TimeUnit.SECONDS)) {
+                            throw new IllegalStateException("calls do not overlap");
+                        }
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    return employer.toLowerCase();
+                }, 2)
+                .getList();
+
+        assertEquals(Arrays.asList("epam", "google", "yandex"), normalized);
+
+        // f throws before the started calls complete, they are cancelled
+        final List<CompletableFuture<String>> started = new ArrayList<>();
+        try {
+            new MapHelper<>(ids).mapAsync(id -> {
+                if (id == 2) {
+                    throw new IllegalArgumentException("no employer " + id);
+                }
+                final CompletableFuture<String> future = new CompletableFuture<>();
+                started.add(future);
+                return future;
+            }, 3);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals(2, started.size());
+            assertTrue(started.stream().allMatch(CompletableFuture::isCancelled));
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 }
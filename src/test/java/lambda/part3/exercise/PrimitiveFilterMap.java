@@ -0,0 +1,474 @@
+package lambda.part3.exercise;
+
+import data.Employee;
+import data.JobHistoryEntry;
+import data.Person;
+import lambda.part3.exercise.FilterMap.LazyCollectionHelper;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.OptionalDouble;
+import java.util.OptionalInt;
+import java.util.OptionalLong;
+import java.util.function.BiConsumer;
+import java.util.function.DoubleConsumer;
+import java.util.function.DoublePredicate;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+import java.util.function.LongConsumer;
+import java.util.function.LongPredicate;
+import java.util.function.LongUnaryOperator;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+import java.util.function.UnaryOperator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+// Primitive stages are stored as sink wrappers: (downstream sink) -> (sink of this stage).
+// A terminal builds the sink chain once, so values are never boxed and no per element objects are created.
+public class PrimitiveFilterMap {
+
+    // the largest array length the JVM reliably allocates
+    private static final int MAX_BUCKETS = Integer.MAX_VALUE - 8;
+
+    public static class IntLazyCollection<T> {
+        private final LazyCollectionHelper<T> source;
+        // pushes the values of one source element, so flatMapToInt needs no intermediate collection
+        private final BiConsumer<T, IntConsumer> function;
+        private final UnaryOperator<IntConsumer> stages;
+
+        public IntLazyCollection(LazyCollectionHelper<T> source, ToIntFunction<T> function) {
+            this(source, (t, sink) -> sink.accept(function.applyAsInt(t)), UnaryOperator.identity());
+        }
+
+        public IntLazyCollection(LazyCollectionHelper<T> source, BiConsumer<T, IntConsumer> function) {
+            this(source, function, UnaryOperator.identity());
+        }
+
+        private IntLazyCollection(LazyCollectionHelper<T> source, BiConsumer<T, IntConsumer> function, UnaryOperator<IntConsumer> stages) {
+            this.source = source;
+            this.function = function;
+            this.stages = stages;
+        }
+
+        public IntLazyCollection<T> filter(IntPredicate condition) {
+            return new IntLazyCollection<>(source, function, down -> stages.apply(v -> {
+                if (condition.test(v)) {
+                    down.accept(v);
+                }
+            }));
+        }
+
+        public IntLazyCollection<T> map(IntUnaryOperator operator) {
+            return new IntLazyCollection<>(source, function, down -> stages.apply(v -> down.accept(operator.applyAsInt(v))));
+        }
+
+        public void forEach(IntConsumer action) {
+            final IntConsumer sink = stages.apply(action);
+            source.forEach(t -> function.accept(t, sink));
+        }
+
+        public long sum() {
+            final long[] sum = {0};
+            forEach(v -> sum[0] += v);
+            return sum[0];
+        }
+
+        public long count() {
+            final long[] count = {0};
+            forEach(v -> count[0]++);
+            return count[0];
+        }
+
+        public OptionalInt min() {
+            final int[] min = {Integer.MAX_VALUE};
+            final boolean[] found = {false};
+            forEach(v -> {
+                min[0] = Math.min(min[0], v);
+                found[0] = true;
+            });
+            return found[0] ? OptionalInt.of(min[0]) : OptionalInt.empty();
+        }
+
+        public OptionalInt max() {
+            final int[] max = {Integer.MIN_VALUE};
+            final boolean[] found = {false};
+            forEach(v -> {
+                max[0] = Math.max(max[0], v);
+                found[0] = true;
+            });
+            return found[0] ? OptionalInt.of(max[0]) : OptionalInt.empty();
+        }
+
+        public OptionalDouble average() {
+            final long[] sumAndCount = {0, 0};
+            forEach(v -> {
+                sumAndCount[0] += v;
+                sumAndCount[1]++;
+            });
+            return sumAndCount[1] == 0 ? OptionalDouble.empty() : OptionalDouble.of((double) sumAndCount[0] / sumAndCount[1]);
+        }
+
+        // result[i] is the number of values in [i * bucketWidth, (i + 1) * bucketWidth)
+        public int[] histogram(int bucketWidth) {
+            if (bucketWidth < 1) {
+                throw new IllegalArgumentException("bucketWidth must be positive: " + bucketWidth);
+            }
+
+            final int[][] buckets = {new int[16]};
+            final int[] size = {0};
+            forEach(v -> {
+                if (v < 0) {
+                    throw new IllegalArgumentException("histogram of a negative value: " + v);
+                }
+                final int bucket = v / bucketWidth;
+                if (bucket >= buckets[0].length) {
+                    buckets[0] = Arrays.copyOf(buckets[0], Math.max(bucket + 1, buckets[0].length * 2));
+                }
+                buckets[0][bucket]++;
+                size[0] = Math.max(size[0], bucket + 1);
+            });
+            return Arrays.copyOf(buckets[0], size[0]);
+        }
+
+        public int[] toArray() {
+            final int[][] values = {new int[16]};
+            final int[] size = {0};
+            forEach(v -> {
+                if (size[0] == values[0].length) {
+                    values[0] = Arrays.copyOf(values[0], size[0] * 2);
+                }
+                values[0][size[0]++] = v;
+            });
+            return Arrays.copyOf(values[0], size[0]);
+        }
+    }
+
+    public static class LongLazyCollection<T> {
+        private final LazyCollectionHelper<T> source;
+        private final ToLongFunction<T> function;
+        private final UnaryOperator<LongConsumer> stages;
+
+        public LongLazyCollection(LazyCollectionHelper<T> source, ToLongFunction<T> function) {
+            this(source, function, UnaryOperator.identity());
+        }
+
+        private LongLazyCollection(LazyCollectionHelper<T> source, ToLongFunction<T> function, UnaryOperator<LongConsumer> stages) {
+            this.source = source;
+            this.function = function;
+            this.stages = stages;
+        }
+
+        public LongLazyCollection<T> filter(LongPredicate condition) {
+            return new LongLazyCollection<>(source, function, down -> stages.apply(v -> {
+                if (condition.test(v)) {
+                    down.accept(v);
+                }
+            }));
+        }
+
+        public LongLazyCollection<T> map(LongUnaryOperator operator) {
+            return new LongLazyCollection<>(source, function, down -> stages.apply(v -> down.accept(operator.applyAsLong(v))));
+        }
+
+        public void forEach(LongConsumer action) {
+            final LongConsumer sink = stages.apply(action);
+            source.forEach(t -> sink.accept(function.applyAsLong(t)));
+        }
+
+        public long sum() {
+            final long[] sum = {0};
+            forEach(v -> sum[0] += v);
+            return sum[0];
+        }
+
+        public long count() {
+            final long[] count = {0};
+            forEach(v -> count[0]++);
+            return count[0];
+        }
+
+        public OptionalLong min() {
+            final long[] min = {Long.MAX_VALUE};
+            final boolean[] found = {false};
+            forEach(v -> {
+                min[0] = Math.min(min[0], v);
+                found[0] = true;
+            });
+            return found[0] ? OptionalLong.of(min[0]) : OptionalLong.empty();
+        }
+
+        public OptionalLong max() {
+            final long[] max = {Long.MIN_VALUE};
+            final boolean[] found = {false};
+            forEach(v -> {
+                max[0] = Math.max(max[0], v);
+                found[0] = true;
+            });
+            return found[0] ? OptionalLong.of(max[0]) : OptionalLong.empty();
+        }
+
+        public OptionalDouble average() {
+            final long[] sumAndCount = {0, 0};
+            forEach(v -> {
+                sumAndCount[0] += v;
+                sumAndCount[1]++;
+            });
+            return sumAndCount[1] == 0 ? OptionalDouble.empty() : OptionalDouble.of((double) sumAndCount[0] / sumAndCount[1]);
+        }
+
+        // result[i] is the number of values in [i * bucketWidth, (i + 1) * bucketWidth)
+        public int[] histogram(long bucketWidth) {
+            if (bucketWidth < 1) {
+                throw new IllegalArgumentException("bucketWidth must be positive: " + bucketWidth);
+            }
+
+            final int[][] buckets = {new int[16]};
+            final int[] size = {0};
+            forEach(v -> {
+                if (v < 0) {
+                    throw new IllegalArgumentException("histogram of a negative value: " + v);
+                }
+                if (v / bucketWidth >= MAX_BUCKETS) {
+                    throw new IllegalArgumentException("too many buckets for " + v + " with bucketWidth " + bucketWidth);
+                }
+                final int bucket = (int) (v / bucketWidth);
+                if (bucket >= buckets[0].length) {
+                    buckets[0] = Arrays.copyOf(buckets[0], Math.max(bucket + 1, Math.min(buckets[0].length * 2, MAX_BUCKETS)));
+                }
+                buckets[0][bucket]++;
+                size[0] = Math.max(size[0], bucket + 1);
+            });
+            return Arrays.copyOf(buckets[0], size[0]);
+        }
+
+        public long[] toArray() {
+            final long[][] values = {new long[16]};
+            final int[] size = {0};
+            forEach(v -> {
+                if (size[0] == values[0].length) {
+                    values[0] = Arrays.copyOf(values[0], size[0] * 2);
+                }
+                values[0][size[0]++] = v;
+            });
+            return Arrays.copyOf(values[0], size[0]);
+        }
+    }
+
+    public static class DoubleLazyCollection<T> {
+        private final LazyCollectionHelper<T> source;
+        private final ToDoubleFunction<T> function;
+        private final UnaryOperator<DoubleConsumer> stages;
+
+        public DoubleLazyCollection(LazyCollectionHelper<T> source, ToDoubleFunction<T> function) {
+            this(source, function, UnaryOperator.identity());
+        }
+
+        private DoubleLazyCollection(LazyCollectionHelper<T> source, ToDoubleFunction<T> function, UnaryOperator<DoubleConsumer> stages) {
+            this.source = source;
+            this.function = function;
+            this.stages = stages;
+        }
+
+        public DoubleLazyCollection<T> filter(DoublePredicate condition) {
+            return new DoubleLazyCollection<>(source, function, down -> stages.apply(v -> {
+                if (condition.test(v)) {
+                    down.accept(v);
+                }
+            }));
+        }
+
+        public DoubleLazyCollection<T> map(DoubleUnaryOperator operator) {
+            return new DoubleLazyCollection<>(source, function, down -> stages.apply(v -> down.accept(operator.applyAsDouble(v))));
+        }
+
+        public void forEach(DoubleConsumer action) {
+            final DoubleConsumer sink = stages.apply(action);
+            source.forEach(t -> sink.accept(function.applyAsDouble(t)));
+        }
+
+        public double sum() {
+            final double[] sum = {0};
+            forEach(v -> sum[0] += v);
+            return sum[0];
+        }
+
+        public long count() {
+            final long[] count = {0};
+            forEach(v -> count[0]++);
+            return count[0];
+        }
+
+        public OptionalDouble min() {
+            final double[] min = {Double.POSITIVE_INFINITY};
+            final boolean[] found = {false};
+            forEach(v -> {
+                min[0] = Math.min(min[0], v);
+                found[0] = true;
+            });
+            return found[0] ? OptionalDouble.of(min[0]) : OptionalDouble.empty();
+        }
+
+        public OptionalDouble max() {
+            final double[] max = {Double.NEGATIVE_INFINITY};
+            final boolean[] found = {false};
+            forEach(v -> {
+                max[0] = Math.max(max[0], v);
+                found[0] = true;
+            });
+            return found[0] ? OptionalDouble.of(max[0]) : OptionalDouble.empty();
+        }
+
+        public OptionalDouble average() {
+            final double[] sum = {0};
+            final long[] count = {0};
+            forEach(v -> {
+                sum[0] += v;
+                count[0]++;
+            });
+            return count[0] == 0 ? OptionalDouble.empty() : OptionalDouble.of(sum[0] / count[0]);
+        }
+
+        // result[i] is the number of values in [i * bucketWidth, (i + 1) * bucketWidth)
+        public int[] histogram(double bucketWidth) {
+            if (!(bucketWidth > 0) || Double.isInfinite(bucketWidth)) {
+                throw new IllegalArgumentException("bucketWidth must be positive and finite: " + bucketWidth);
+            }
+
+            final int[][] buckets = {new int[16]};
+            final int[] size = {0};
+            forEach(v -> {
+                // also rejects NaN
+                if (!(v >= 0)) {
+                    throw new IllegalArgumentException("histogram of a negative value: " + v);
+                }
+                if (v / bucketWidth >= MAX_BUCKETS) {
+                    throw new IllegalArgumentException("too many buckets for " + v + " with bucketWidth " + bucketWidth);
+                }
+                final int bucket = (int) (v / bucketWidth);
+                if (bucket >= buckets[0].length) {
+                    buckets[0] = Arrays.copyOf(buckets[0], Math.max(bucket + 1, Math.min(buckets[0].length * 2, MAX_BUCKETS)));
+                }
+                buckets[0][bucket]++;
+                size[0] = Math.max(size[0], bucket + 1);
+            });
+            return Arrays.copyOf(buckets[0], size[0]);
+        }
+
+        public double[] toArray() {
+            final double[][] values = {new double[16]};
+            final int[] size = {0};
+            forEach(v -> {
+                if (size[0] == values[0].length) {
+                    values[0] = Arrays.copyOf(values[0], size[0] * 2);
+                }
+                values[0][size[0]++] = v;
+            });
+            return Arrays.copyOf(values[0], size[0]);
+        }
+    }
+
+    private static final List<Employee> EMPLOYEES =
+            Arrays.asList(
+                    new Employee(
+                            new Person("a", "Galt", 30),
+                            Arrays.asList(
+                                    new JobHistoryEntry(2, "dev", "epam"),
+                                    new JobHistoryEntry(1, "dev", "google")
+                            )),
+                    new Employee(
+                            new Person("b", "Doe", 40),
+                            Arrays.asList(
+                                    new JobHistoryEntry(3, "qa", "yandex"),
+                                    new JobHistoryEntry(1, "qa", "epam"),
+                                    new JobHistoryEntry(1, "dev", "abc")
+                            )),
+                    new Employee(
+                            new Person("c", "White", 50),
+                            Collections.singletonList(
+                                    new JobHistoryEntry(5, "qa", "epam")
+                            ))
+            );
+
+    private static int totalDuration(Employee e) {
+        int sum = 0;
+        for (JobHistoryEntry j : e.getJobHistory()) {
+            sum += j.getDuration();
+        }
+        return sum;
+    }
+
+    @Test
+    public void intAnalytics() {
+        final IntLazyCollection<Employee> durations = new LazyCollectionHelper<>(EMPLOYEES)
+                .mapToInt(PrimitiveFilterMap::totalDuration);
+
+        assertEquals(13, durations.sum());
+        assertEquals(OptionalInt.of(3), durations.min());
+        assertEquals(OptionalInt.of(5), durations.max());
+        assertArrayEquals(new int[]{3, 5, 5}, durations.toArray());
+        assertArrayEquals(new int[]{0, 1, 2}, durations.histogram(2));
+        assertArrayEquals(new int[]{5, 5}, durations.filter(d -> d > 3).toArray());
+        assertEquals(OptionalInt.empty(), durations.filter(d -> d > 5).max());
+    }
+
+    @Test
+    public void ageHistogram() {
+        final int[] histogram = new LazyCollectionHelper<>(EMPLOYEES)
+                .map(Employee::getPerson)
+                .mapToInt(Person::getAge)
+                .map(age -> age - 30)
+                .histogram(10);
+
+        assertArrayEquals(new int[]{1, 1, 1}, histogram);
+    }
+
+    @Test
+    public void longAndDoubleAnalytics() {
+        final LazyCollectionHelper<Person> persons = new LazyCollectionHelper<>(EMPLOYEES).map(Employee::getPerson);
+
+        assertEquals(120L, persons.mapToLong(Person::getAge).sum());
+        assertEquals(OptionalLong.of(50), persons.mapToLong(Person::getAge).filter(a -> a > 30).max());
+        assertEquals(40.0, persons.mapToDouble(Person::getAge).average().getAsDouble(), 0.0001);
+        assertEquals(3.0, persons.mapToDouble(Person::getAge).map(a -> a / 10).min().getAsDouble(), 0.0001);
+
+        final LongLazyCollection<Person> ages = persons.mapToLong(Person::getAge);
+        assertEquals(3, ages.count());
+        assertEquals(40.0, ages.average().getAsDouble(), 0.0001);
+        assertEquals(OptionalDouble.empty(), ages.filter(a -> a > 50).average());
+        assertArrayEquals(new int[]{0, 0, 0, 1, 1, 1}, ages.histogram(10));
+
+        final DoubleLazyCollection<Person> decades = persons.mapToDouble(Person::getAge).map(a -> a / 10);
+        assertEquals(2, decades.filter(d -> d > 3).count());
+        assertArrayEquals(new double[]{3.0, 4.0, 5.0}, decades.toArray(), 0.0001);
+        assertArrayEquals(new int[]{0, 0, 0, 0, 0, 0, 1, 0, 1, 0, 1}, decades.histogram(0.5));
+        assertEquals(0, decades.filter(d -> d > 5).histogram(1).length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void doubleHistogramRejectsNaN() {
+        new LazyCollectionHelper<>(EMPLOYEES).mapToDouble(e -> Double.NaN).histogram(1);
+    }
+
+    @Test
+    public void flatMapToInt() {
+        final IntLazyCollection<Employee> durations = new LazyCollectionHelper<>(EMPLOYEES)
+                .flatMapToInt((e, sink) -> {
+                    for (JobHistoryEntry j : e.getJobHistory()) {
+                        sink.accept(j.getDuration());
+                    }
+                });
+
+        assertArrayEquals(new int[]{2, 1, 3, 1, 1, 5}, durations.toArray());
+        assertEquals(13, durations.sum());
+        assertEquals(6, durations.count());
+        assertArrayEquals(new int[]{3, 1, 1}, durations.filter(d -> d != 5).map(d -> d - 1).histogram(1));
+        assertEquals(OptionalInt.empty(), durations.filter(d -> d > 5).max());
+    }
+}
@@ -0,0 +1,493 @@
+package lambda.part3.exercise;
+
+import data.Employee;
+import data.JobHistoryEntry;
+import data.Person;
+import org.junit.Test;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+// filter/map/flatMap over a Reactive Streams Publisher, for sources that never end.
+// The synchronous stages are fused into one sink chain, as in LazyFlatMapHelper, and run in a single
+// operator between the source and the subscriber. The operator prefetches at most batch source elements
+// and asks for more in batches, so memory does not grow with the length of the stream.
+public class ReactiveFilterMap {
+    public static final int DEFAULT_BATCH = 256;
+
+    private interface Stages<T, R> {
+        Consumer<T> sink(Consumer<R> downstream);
+    }
+
+    public static class ReactiveHelper<T, R> {
+        private final Publisher<T> source;
+        private final Stages<T, R> stages;
+
+        private ReactiveHelper(Publisher<T> source, Stages<T, R> stages) {
+            this.source = source;
+            this.stages = stages;
+        }
+
+        public static <T> ReactiveHelper<T, T> from(Publisher<T> source) {
+            return new ReactiveHelper<T, T>(source, (Consumer<T> down) -> down);
+        }
+
+        public ReactiveHelper<T, R> filter(Predicate<R> condition) {
+            return flatMap((R r, Consumer<R> down) -> {
+                if (condition.test(r)) {
+                    down.accept(r);
+                }
+            });
+        }
+
+        public <R2> ReactiveHelper<T, R2> map(Function<R, R2> f) {
+            return flatMap((R r, Consumer<R2> down) -> down.accept(f.apply(r)));
+        }
+
+        public <R2> ReactiveHelper<T, R2> flatMap(Function<R, List<R2>> f) {
+            return flatMap((R r, Consumer<R2> down) -> f.apply(r).forEach(down));
+        }
+
+        // children of one element are buffered until the subscriber asks for them
+        public <R2> ReactiveHelper<T, R2> flatMap(BiConsumer<R, Consumer<R2>> f) {
+            return new ReactiveHelper<T, R2>(source, (Consumer<R2> down) -> stages.sink(r -> f.accept(r, down)));
+        }
+
+        public Publisher<R> toPublisher() {
+            return toPublisher(DEFAULT_BATCH);
+        }
+
+        public Publisher<R> toPublisher(int batch) {
+            if (batch < 1) {
+                throw new IllegalArgumentException("batch must be positive: " + batch);
+            }
+            return subscriber -> source.subscribe(new FusedOperator<T, R>(subscriber, stages, batch));
+        }
+
+        // requests batch elements at a time; completes with the stream, or exceptionally with its error
+        public CompletableFuture<Void> forEach(Consumer<? super R> action, int batch) {
+            final CompletableFuture<Void> done = new CompletableFuture<>();
+            toPublisher(batch).subscribe(new BatchSubscriber<R>(action, batch, done));
+            return done;
+        }
+    }
+
+    // Subscriber to the source and Subscription of the downstream subscriber.
+    // All stage calls and downstream signals happen in drain(), by one thread at a time.
+    private static class FusedOperator<T, R> implements Subscriber<T>, Subscription {
+        private final Subscriber<? super R> downstream;
+        private final Consumer<T> sink;
+        private final int batch;
+        private final int replenish;
+        private final Queue<T> inbound = new ConcurrentLinkedQueue<>();
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        // drain() only
+        private final ArrayDeque<R> outbound = new ArrayDeque<>();
+        private int consumed;
+        private volatile Subscription upstream;
+        private volatile boolean done;
+        private volatile boolean cancelled;
+        private Throwable error;
+        // a request of n <= 0, signalled by drain() (rule 3.9)
+        private volatile Throwable invalidRequest;
+
+        private FusedOperator(Subscriber<? super R> downstream, Stages<T, R> stages, int batch) {
+            this.downstream = downstream;
+            this.sink = stages.sink(outbound::add);
+            this.batch = batch;
+            this.replenish = Math.max(1, batch - batch / 4);
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            if (upstream != null) {
+                subscription.cancel();
+                return;
+            }
+            upstream = subscription;
+            downstream.onSubscribe(this);
+            subscription.request(batch);
+        }
+
+        @Override
+        public void onNext(T t) {
+            inbound.offer(t);
+            drain();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            done = true;
+            drain();
+        }
+
+        @Override
+        public void onComplete() {
+            done = true;
+            drain();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                if (invalidRequest == null) {
+                    invalidRequest = new IllegalArgumentException("request must be positive: " + n);
+                }
+                upstream.cancel();
+                drain();
+                return;
+            }
+            long current;
+            do {
+                current = requested.get();
+            } while (!requested.compareAndSet(current, current + n < 0 ? Long.MAX_VALUE : current + n));
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            upstream.cancel();
+            drain();
+        }
+
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+
+            int missed = 1;
+            do {
+                final long demand = requested.get();
+                long emitted = 0;
+                while (true) {
+                    if (cancelled) {
+                        inbound.clear();
+                        outbound.clear();
+                        return;
+                    }
+                    if (invalidRequest != null) {
+                        cancelled = true;
+                        inbound.clear();
+                        outbound.clear();
+                        downstream.onError(invalidRequest);
+                        return;
+                    }
+                    if (!outbound.isEmpty()) {
+                        if (emitted == demand) {
+                            break;
+                        }
+                        downstream.onNext(outbound.poll());
+                        emitted++;
+                        continue;
+                    }
+
+                    // read done before polling, so no element is lost behind onComplete
+                    final boolean finished = done;
+                    final T t = inbound.poll();
+                    if (t == null) {
+                        if (finished) {
+                            cancelled = true;
+                            if (error != null) {
+                                downstream.onError(error);
+                            } else {
+                                downstream.onComplete();
+                            }
+                            return;
+                        }
+                        break;
+                    }
+
+                    try {
+                        sink.accept(t);
+                    } catch (RuntimeException e) {
+                        cancelled = true;
+                        upstream.cancel();
+                        downstream.onError(e);
+                        return;
+                    }
+                    if (++consumed == replenish) {
+                        consumed = 0;
+                        upstream.request(replenish);
+                    }
+                }
+
+                if (emitted != 0 && demand != Long.MAX_VALUE) {
+                    requested.addAndGet(-emitted);
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+    }
+
+    // Terminal subscriber: asks for batch elements and for the next batch once half of them arrived
+    private static class BatchSubscriber<R> implements Subscriber<R> {
+        private final Consumer<? super R> action;
+        private final int batch;
+        private final CompletableFuture<Void> done;
+        private Subscription subscription;
+        private int received;
+
+        private BatchSubscriber(Consumer<? super R> action, int batch, CompletableFuture<Void> done) {
+            this.action = action;
+            this.batch = batch;
+            this.done = done;
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(batch);
+        }
+
+        @Override
+        public void onNext(R r) {
+            try {
+                action.accept(r);
+            } catch (RuntimeException e) {
+                subscription.cancel();
+                done.completeExceptionally(e);
+                return;
+            }
+            if (++received == Math.max(1, batch / 2)) {
+                received = 0;
+                subscription.request(Math.max(1, batch / 2));
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            done.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            done.complete(null);
+        }
+    }
+
+    // Publisher over an Iterable, possibly endless; emits only what was requested
+    public static class IterablePublisher<T> implements Publisher<T> {
+        private final Iterable<T> source;
+
+        public IterablePublisher(Iterable<T> source) {
+            this.source = source;
+        }
+
+        @Override
+        public void subscribe(Subscriber<? super T> subscriber) {
+            final Iterator<T> iterator = source.iterator();
+            final AtomicLong requested = new AtomicLong();
+            final AtomicInteger wip = new AtomicInteger();
+            subscriber.onSubscribe(new Subscription() {
+                private volatile boolean cancelled;
+                // a request of n <= 0, signalled by the emitting loop (rule 3.9)
+                private volatile Throwable invalidRequest;
+
+                @Override
+                public void request(long n) {
+                    if (n <= 0) {
+                        if (invalidRequest == null) {
+                            invalidRequest = new IllegalArgumentException("request must be positive: " + n);
+                        }
+                    } else {
+                        long current;
+                        do {
+                            current = requested.get();
+                        } while (!requested.compareAndSet(current, current + n < 0 ? Long.MAX_VALUE : current + n));
+                    }
+
+                    // request() called from onNext only adds demand or the error, the running loop emits it
+                    if (wip.getAndIncrement() != 0) {
+                        return;
+                    }
+                    int missed = 1;
+                    do {
+                        long emitted = 0;
+                        final long demand = requested.get();
+                        while (!cancelled) {
+                            if (invalidRequest != null) {
+                                cancelled = true;
+                                subscriber.onError(invalidRequest);
+                                return;
+                            }
+                            if (emitted == demand) {
+                                break;
+                            }
+                            if (!iterator.hasNext()) {
+                                cancelled = true;
+                                subscriber.onComplete();
+                                return;
+                            }
+                            subscriber.onNext(iterator.next());
+                            emitted++;
+                        }
+                        requested.addAndGet(-emitted);
+                        missed = wip.addAndGet(-missed);
+                    } while (missed != 0);
+                }
+
+                @Override
+                public void cancel() {
+                    cancelled = true;
+                }
+            });
+        }
+    }
+
+    private static final List<Employee> EMPLOYEES =
+            Arrays.asList(
+                    new Employee(
+                            new Person("a", "Galt", 30),
+                            Arrays.asList(
+                                    new JobHistoryEntry(2, "dev", "epam"),
+                                    new JobHistoryEntry(1, "dev", "google")
+                            )),
+                    new Employee(
+                            new Person("b", "Doe", 40),
+                            Arrays.asList(
+                                    new JobHistoryEntry(3, "qa", "yandex"),
+                                    new JobHistoryEntry(1, "qa", "epam"),
+                                    new JobHistoryEntry(1, "dev", "abc")
+                            )),
+                    new Employee(
+                            new Person("c", "White", 50),
+                            Collections.singletonList(
+                                    new JobHistoryEntry(5, "qa", "epam")
+                            ))
+            );
+
+    @Test
+    public void reactive_filter_map() throws Exception {
+        final List<String> employers = new ArrayList<>();
+        ReactiveHelper.from(new IterablePublisher<>(EMPLOYEES))
+                .filter(e -> e.getPerson().getAge() > 30)
+                .flatMap((Employee e, Consumer<JobHistoryEntry> down) -> e.forEachJob(down))
+                .filter(j -> j.getPosition().equals("qa"))
+                .map(JobHistoryEntry::getEmployer)
+                .forEach(employers::add, 2)
+                .get(10, TimeUnit.SECONDS);
+
+        // as Mapping.lazy_flat_mapping
+        assertEquals(Arrays.asList("yandex", "epam", "epam"), employers);
+    }
+
+    @Test
+    public void endless_feed_with_backpressure() {
+        final AtomicLong produced = new AtomicLong();
+        final Iterable<Employee> endless = () -> new Iterator<Employee>() {
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+
+            @Override
+            public Employee next() {
+                return EMPLOYEES.get((int) (produced.getAndIncrement() % EMPLOYEES.size()));
+            }
+        };
+
+        final List<String> received = new ArrayList<>();
+        ReactiveHelper.from(new IterablePublisher<>(endless))
+                .flatMap(Employee::getJobHistory)
+                .map(JobHistoryEntry::getEmployer)
+                .toPublisher(16)
+                .subscribe(new Subscriber<String>() {
+                    private Subscription subscription;
+
+                    @Override
+                    public void onSubscribe(Subscription subscription) {
+                        this.subscription = subscription;
+                        subscription.request(10);
+                    }
+
+                    @Override
+                    public void onNext(String employer) {
+                        received.add(employer);
+                        if (received.size() == 1000) {
+                            subscription.cancel();
+                        } else if (received.size() % 10 == 0) {
+                            subscription.request(10);
+                        }
+                    }
+
+                    @Override
+                    public void onError(Throwable throwable) {
+                        throw new AssertionError(throwable);
+                    }
+
+                    @Override
+                    public void onComplete() {
+                        throw new AssertionError("endless feed completed");
+                    }
+                });
+
+        assertEquals(1000, received.size());
+        assertEquals(Arrays.asList("epam", "google", "yandex", "epam", "abc", "epam", "epam"), received.subList(0, 7));
+        // 1000 employers come from ~500 employees, the source is at most one batch ahead
+        assertTrue("produced " + produced.get(), produced.get() <= 500 + 16);
+    }
+
+    @Test
+    public void invalid_request_is_signalled_after_on_next() {
+        assertInvalidRequestSignalledInOrder(new IterablePublisher<>(EMPLOYEES));
+        assertInvalidRequestSignalledInOrder(ReactiveHelper.from(new IterablePublisher<>(EMPLOYEES))
+                .flatMap(Employee::getJobHistory)
+                .toPublisher(2));
+    }
+
+    // request(0) from onNext: onError follows once onNext returned, and nothing after it (rules 1.3, 3.9)
+    private static <T> void assertInvalidRequestSignalledInOrder(Publisher<T> publisher) {
+        final List<String> signals = new ArrayList<>();
+        publisher.subscribe(new Subscriber<T>() {
+            private Subscription subscription;
+
+            @Override
+            public void onSubscribe(Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(2);
+            }
+
+            @Override
+            public void onNext(T t) {
+                signals.add("onNext");
+                subscription.request(0);
+                signals.add("onNext returned");
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                signals.add(throwable.getClass().getSimpleName());
+            }
+
+            @Override
+            public void onComplete() {
+                signals.add("onComplete");
+            }
+        });
+
+        assertEquals(Arrays.asList("onNext", "onNext returned", "IllegalArgumentException"), signals);
+    }
+}